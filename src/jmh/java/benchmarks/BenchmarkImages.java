@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * <p>Class which provides the JPEG images used by the benchmarks.
+ * 
+ * <p>Synthetic images are generated with ImageIO, so each size is available without storing 
+ * large files. They are made up of gradients, shapes and noise, from a fixed seed, so the 
+ * same image is generated on each run. The giraffe image used by the GUI tests is a fixed case.
+ * 
+ * @author Ashley Allott
+ */
+final class BenchmarkImages {
+	
+	public static final String GIRAFFE = "giraffe";
+	private static final String GIRAFFE_PATH = "test/giraffe.jpg";
+	
+	private BenchmarkImages(){}
+	
+	/**
+	 * <p>Gets the bytes of a benchmark JPEG.
+	 * 
+	 * @param image	{@link #GIRAFFE}, or the width and height in pixels of a synthetic image
+	 * @return		byte array containing the JPEG
+	 * @throws Exception
+	 */
+	public static byte[] load(String image) throws Exception{
+		if(image.equals(GIRAFFE)){
+			return Files.readAllBytes(Paths.get(GIRAFFE_PATH));
+		}
+		return generate(Integer.parseInt(image));
+	}
+	
+	/**
+	 * <p>Generates a synthetic JPEG.
+	 * 
+	 * @param size	the width and height of the image in pixels
+	 * @return		byte array containing the JPEG
+	 * @throws Exception
+	 */
+	public static byte[] generate(int size) throws Exception{
+		Random random = new Random(size);
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		
+		//Smooth background
+		for(int y=0; y<size; y++){
+			for(int x=0; x<size; x++){
+				int red = (x * 255) / size;
+				int green = (y * 255) / size;
+				int blue = ((x + y) * 127) / size;
+				image.setRGB(x, y, (red << 16) | (green << 8) | blue);
+			}
+		}
+		
+		//Edges and detail
+		Graphics2D graphics = image.createGraphics();
+		for(int i=0; i<size / 8; i++){
+			graphics.setColor(new Color(random.nextInt(0x1000000)));
+			int x = random.nextInt(size);
+			int y = random.nextInt(size);
+			int width = 1 + random.nextInt(size / 4);
+			int height = 1 + random.nextInt(size / 4);
+			if(random.nextBoolean()){
+				graphics.fillOval(x, y, width, height);
+			}else{
+				graphics.drawRect(x, y, width, height);
+			}
+		}
+		graphics.dispose();
+		
+		//Noise
+		for(int y=0; y<size; y++){
+			for(int x=0; x<size; x++){
+				int rgb = image.getRGB(x, y);
+				int noise = random.nextInt(17) - 8;
+				int red = Math.max(0, Math.min(255, ((rgb >> 16) & 0xFF) + noise));
+				int green = Math.max(0, Math.min(255, ((rgb >> 8) & 0xFF) + noise));
+				int blue = Math.max(0, Math.min(255, (rgb & 0xFF) + noise));
+				image.setRGB(x, y, (red << 16) | (green << 8) | blue);
+			}
+		}
+		
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpg", output);
+		return output.toByteArray();
+	}
+}
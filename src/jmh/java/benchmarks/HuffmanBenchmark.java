@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import manipulation.image.JPEG.Huffman;
+import manipulation.image.JPEG.ScanReader;
+import manipulation.image.JPEG.ScanWriter;
+
+/**
+ * <p>Class for benchmarking the coding of symbols with a Huffman table, through the 
+ * ScanWriter and ScanReader as the codec does.
+ * 
+ * <p>The table is an optimal AC table for symbols drawn from a skewed distribution, short 
+ * runs and small magnitudes being the most common, as in a typical scan. Both benchmarks 
+ * code {@link #SYMBOL_COUNT} symbols.
+ * 
+ * @author Ashley Allott
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HuffmanBenchmark {
+	
+	private static final int SYMBOL_COUNT = 1 << 16;
+	
+	private Huffman table;
+	private byte[] symbols;
+	private byte[] encoded;
+	
+	@Setup
+	public void setUp() throws Exception{
+		Random random = new Random(SYMBOL_COUNT);
+		symbols = new byte[SYMBOL_COUNT];
+		long[] frequencies = new long[256];
+		for(int i=0; i<SYMBOL_COUNT; i++){
+			int run = Math.min(15, (int)(-Math.log(1 - random.nextDouble()) * 2));
+			int magnitude = Math.min(10, 1 + (int)(-Math.log(1 - random.nextDouble()) * 1.5));
+			int symbol = (i % 8 == 7) ? 0x00 : ((run << 4) | magnitude);
+			symbols[i] = (byte)symbol;
+			frequencies[symbol]++;
+		}
+		table = new Huffman((short)1, (short)0, frequencies);
+		encoded = encode();
+	}
+	
+	@Benchmark
+	public byte[] encode(){
+		ScanWriter writer = new ScanWriter(SYMBOL_COUNT * 2);
+		for(int i=0; i<SYMBOL_COUNT; i++){
+			writer.writeBits(table.getCodeValue(symbols[i]), table.getCodeLength(symbols[i]));
+		}
+		return writer.toByteArray();
+	}
+	
+	@Benchmark
+	public int decode() throws Exception{
+		ScanReader reader = new ScanReader(ByteBuffer.wrap(encoded), 0, encoded.length);
+		int checksum = 0;
+		for(int i=0; i<SYMBOL_COUNT; i++){
+			int decoded = table.decode(reader.peekBits(16));
+			reader.skipBits(decoded >> 8);
+			checksum += decoded & 0xFF;
+		}
+		return checksum;
+	}
+}
@@ -0,0 +1,105 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import manipulation.image.JPEG.JPEGCodec;
+
+/**
+ * <p>Class for benchmarking the stages of the JPEG codec: decoding the cover, embedding 
+ * and recovering a message, and generating the stego JPEG.
+ * 
+ * <p>Each image has a message filling half of its capacity embedded, using 2 AC values 
+ * per block. The codecs used by the embedding and generation benchmarks are decoded once, 
+ * embedding the same message again leaving the coefficients unchanged.
+ * 
+ * @author Ashley Allott
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JPEGCodecBenchmark {
+	
+	private static final int AC_FOR_MESSAGE = 2;
+	private static final String PASSWORD_KEY = "benchmark";
+	
+	@Param({BenchmarkImages.GIRAFFE, "512", "1024", "2048"})
+	public String image;
+	
+	private byte[] coverBytes;
+	private byte[] message;
+	
+	private JPEGCodec embeddingCodec;
+	private JPEGCodec fullScanCodec;
+	private JPEGCodec recoveryCodec;
+	
+	@Setup
+	public void setUp() throws Exception{
+		coverBytes = BenchmarkImages.load(image);
+		
+		embeddingCodec = new JPEGCodec();
+		embeddingCodec.decodeStream(coverBytes);
+		message = new byte[embeddingCodec.embedCapacity(AC_FOR_MESSAGE) / 2];
+		new Random(message.length).nextBytes(message);
+		embeddingCodec.encode_msg(message, PASSWORD_KEY, AC_FOR_MESSAGE);
+		
+		fullScanCodec = new JPEGCodec();
+		fullScanCodec.setIncrementalEncoding(false);
+		fullScanCodec.decodeStream(coverBytes);
+		fullScanCodec.encode_msg(message, PASSWORD_KEY, AC_FOR_MESSAGE);
+		
+		recoveryCodec = new JPEGCodec();
+		recoveryCodec.decodeStream(embeddingCodec.genStego());
+	}
+	
+	@Benchmark
+	public JPEGCodec decodeStream() throws Exception{
+		JPEGCodec codec = new JPEGCodec();
+		codec.decodeStream(coverBytes);
+		return codec;
+	}
+	
+	@Benchmark
+	public JPEGCodec decodeStreamSerial() throws Exception{
+		JPEGCodec codec = new JPEGCodec();
+		codec.setParallelDecoding(false);
+		codec.decodeStream(coverBytes);
+		return codec;
+	}
+	
+	@Benchmark
+	public JPEGCodec encodeMsg() throws Exception{
+		embeddingCodec.encode_msg(message, PASSWORD_KEY, AC_FOR_MESSAGE);
+		return embeddingCodec;
+	}
+	
+	@Benchmark
+	public byte[] decodeMsg() throws Exception{
+		return recoveryCodec.decode_msg(PASSWORD_KEY);
+	}
+	
+	@Benchmark
+	public byte[] genStego() throws Exception{
+		return embeddingCodec.genStego();
+	}
+	
+	@Benchmark
+	public byte[] genStegoFullScan() throws Exception{
+		return fullScanCodec.genStego();
+	}
+}
@@ -1,5 +1,8 @@
 package manipulation;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -10,6 +13,8 @@ import java.util.Arrays;
  */
 public class BitStream {
 	
+	private static final int INITIAL_CAPACITY = 16;
+	
 	private  byte[] data;
 	private int endPointer;
 	
@@ -37,33 +42,132 @@ public class BitStream {
 	 * 
 	 * <p>The pointer shifts with the read bits. 
 	 * 
+	 * <p>When the bits are within the data, they are read with whole byte loads. Otherwise 
+	 * the bits are read one at a time, reaching the end of the stream as before.
+	 * 
 	 * @param numberOfBits	value of bits to read from the stream
 	 * @return				integer value containing the read bits
 	 * @throws BitStreamException
 	 */
 	public int getBits(int numberOfBits) throws BitStreamException{
+		if(numberOfBits <= 0 || numberOfBits > 32){
+			return 0x00000000;
+		}
+		int position = (ctr*8) + bitPos;
+		if(!isReadable(position, numberOfBits)){
+			return getBitsSingly(numberOfBits);
+		}
+		int value = loadBits(position, numberOfBits);
+		setPosition(position + numberOfBits);
+		return value;
+	}
+	
+	/**
+	 * <p>Loads a specified number of bits (1,32) from a position in the data, with whole 
+	 * byte loads, leaving the pointer where it is.
+	 * 
+	 * @param position		the position of the first bit
+	 * @param numberOfBits	value of bits to load
+	 * @return				integer value containing the loaded bits
+	 */
+	private int loadBits(int position, int numberOfBits){
+		//Load the bytes containing the bits, at most 5 for 32 bits
+		int firstByte = position >> 3;
+		int lastByte = (position + numberOfBits - 1) >> 3;
+		long window = 0;
+		for(int i=firstByte; i<=lastByte; i++){
+			window = (window << 8) | (data[i] & 0xFF);
+		}
+		int unusedBits = ((lastByte + 1) * 8) - (position + numberOfBits);
+		return (int)((window >>> unusedBits) & ((1L << numberOfBits) - 1));
+	}
+	
+	/**
+	 * <p>Gets a specified number of bits from the bitStream (1,64), returning
+	 * the bits in the form of a rightmost shifted long.
+	 * 
+	 * <p>The pointer shifts with the read bits. 
+	 * 
+	 * @param numberOfBits	value of bits to read from the stream
+	 * @return				long value containing the read bits
+	 * @throws BitStreamException
+	 */
+	public long getLong(int numberOfBits) throws BitStreamException{
+		if(numberOfBits <= 32){
+			return getBits(numberOfBits) & 0xFFFFFFFFL;
+		}else if(numberOfBits <= 64){
+			long high = getBits(numberOfBits - 32) & 0xFFFFFFFFL;
+			return (high << 32) | (getBits(32) & 0xFFFFFFFFL);
+		}
+		return 0L;
+	}
+	
+	/**
+	 * <p>Checks if a number of bits can be read from a position with whole byte loads, 
+	 * being within the data and not passing the end of the stream.
+	 * 
+	 * @param position		the position of the first bit
+	 * @param numberOfBits	the amount of bits to read
+	 * @return				boolean value indicating if the bits can be loaded
+	 */
+	private boolean isReadable(int position, int numberOfBits){
+		if(data == null || position + numberOfBits > getLength()*8){
+			return false;
+		}
+		if((endPointer % 8) == 0 && position + numberOfBits > endPointer){
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * <p>Sets the pointer to a position, leaving it at the end of the previous byte when the 
+	 * position is on a byte boundary, as reading one bit at a time does.
+	 * 
+	 * @param position	the position after the last read bit
+	 */
+	private void setPosition(int position){
+		if(position > 0 && (position % 8) == 0){
+			ctr = (position / 8) - 1;
+			bitPos = 8;
+		}else{
+			ctr = position / 8;
+			bitPos = position % 8;
+		}
+	}
+	
+	/**
+	 * <p>Gets a specified number of bits from the bitStream one bit at a time, throwing 
+	 * an exception when moving onto the byte at the end of the stream, or past the last 
+	 * byte of the data.
+	 * 
+	 * @param numberOfBits	value of bits to read from the stream
+	 * @return				integer value containing the read bits
+	 * @throws BitStreamException
+	 */
+	private int getBitsSingly(int numberOfBits) throws BitStreamException{
 		int returnValue = 0x00000000;
-		if(numberOfBits > 0 && numberOfBits <= 32){
-			for(int i=0; i<numberOfBits; i++){
-				if(bitPos == 8){
-					ctr++;
-					bitPos = 0;
-					//if(ctr == data.length){
-					if(((ctr*8) + bitPos) == endPointer){
-						throw new BitStreamException("Reached end of stream");
-					}
+		for(int i=0; i<numberOfBits; i++){
+			if(bitPos == 8){
+				ctr++;
+				bitPos = 0;
+				if(((ctr*8) + bitPos) == endPointer){
+					throw new BitStreamException("Reached end of stream");
 				}
-				returnValue = returnValue << 1;
-				returnValue = (returnValue | (data[ctr] >> (7-bitPos) & 0b1));
-				bitPos++;
 			}
+			if(ctr >= getLength()){
+				throw new BitStreamException("Reached end of data");
+			}
+			returnValue = returnValue << 1;
+			returnValue = (returnValue | (data[ctr] >> (7-bitPos) & 0b1));
+			bitPos++;
 		}
 		return returnValue;
 	}
 	
 	/**
 	 * <p>Gets a specified number of bits from the bitStream with a specified starting
-	 * position in the stream.
+	 * position in the stream, the pointer being left where it was.
 	 * 
 	 * @param start			pointer index to start the reading from
 	 * @param numberOfBits	value of bits to read from the stream
@@ -73,26 +177,11 @@ public class BitStream {
 	public int getBits(int start, int numberOfBits) throws BitStreamException{
 		int curPos = this.getPosition();
 		this.resetStream(start);
-		
-		int returnValue = 0x00000000;
-		if(numberOfBits > 0 && numberOfBits < 32){
-			for(int i=0; i<numberOfBits; i++){
-				if(bitPos == 8){
-					ctr++;
-					bitPos = 0;
-					//if(ctr == data.length){
-					if(((ctr*8) + bitPos) == endPointer){
-						throw new BitStreamException("Reached end of stream");
-					}
-				}
-				returnValue = returnValue << 1;
-				returnValue = (returnValue | (data[ctr] >> (7-bitPos) & 0b1));
-				bitPos++;
-			}
+		try{
+			return getBits(numberOfBits);
+		}finally{
+			this.resetStream(curPos);
 		}
-		
-		this.resetStream(curPos);
-		return returnValue;
 	}
 	
 	/**
@@ -109,8 +198,7 @@ public class BitStream {
 	 * @param pos	integer index value to set the stream to
 	 */
 	public void resetStream(int pos){
-		ctr = pos / 8;
-		bitPos = (pos % 8) - 1;
+		setPosition(pos);
 	}
 	
 	/**
@@ -120,9 +208,10 @@ public class BitStream {
 	 * the end of the stream
 	 */
 	public boolean isEndOfData(){
-		if(ctr == data.length){
+		int length = getLength();
+		if(ctr == length){
 			return true;
-		}else if(ctr == (data.length-1)){
+		}else if(ctr == (length-1)){
 			if(bitPos == 8){
 				return true;
 			}
@@ -143,6 +232,37 @@ public class BitStream {
 	public int getEndPosition(){
 		return endPointer;
 	}
+	/**
+	 * <p>Gets the number of bytes the data of the stream covers, the data array 
+	 * possibly being larger to allow for further bits to be added.
+	 * 
+	 * <p>The number of bits is given by {@link #getEndPosition()}, any bits of the 
+	 * last byte after it being zero.
+	 * 
+	 * @return	the length of the data in bytes
+	 */
+	public int getLength(){
+		return (endPointer + 7) >>> 3;
+	}
+	
+	/**
+	 * <p>Ensures the data array can hold a number of bits, doubling its size when it 
+	 * needs to grow so adding bits one at a time takes linear time overall.
+	 * 
+	 * <p>An array passed to the constructor is copied before any bits are added, 
+	 * being full.
+	 * 
+	 * @param numberOfBits	the total number of bits the array needs to hold
+	 */
+	private void ensureCapacity(int numberOfBits){
+		int requiredBytes = (numberOfBits + 7) >>> 3;
+		if(data == null){
+			data = new byte[Math.max(requiredBytes, INITIAL_CAPACITY)];
+		}else if(requiredBytes > data.length){
+			data = Arrays.copyOf(data, Math.max(requiredBytes, data.length * 2));
+		}
+	}
+	
 	/**
 	 * <p>Adds a bit to the data the stream reads from.
 	 * 
@@ -151,46 +271,119 @@ public class BitStream {
 	 * @param bit	the bit value (in byte form) to add to the bitStream
 	 */
 	public void addBit(byte bit){
-		if(data == null){
-			data = new byte[1];
-		}
-		if(endPointer == (data.length*8)){
-			//Extend Data Array
-			data = Arrays.copyOf(data, (data.length+1));
-			
-			//Initialise new byte
-			data[data.length-1] = (byte)0x00;
-			
-			//Add new bit
-			byte movedBit = (byte)((bit & 0b1) << 7-(endPointer % 8));
-			data[data.length-1] = (byte)(data[data.length-1] | movedBit);	
-			endPointer++;
-		}else{
-			//Add new bit
-			byte movedBit = (byte)((bit & 0b1) << 7-(endPointer % 8));
-			data[data.length-1] = (byte)(data[data.length-1] | movedBit);
-			endPointer++;
+		addBits(bit & 0b1, 1);
+	}
+	
+	/**
+	 * <p>Adds a specified number of bits (1,32) to the data the stream reads from.
+	 * 
+	 * <p>Takes the rightmost bits of the value, adding the most significant first.
+	 * 
+	 * @param value			integer value containing the bits to add
+	 * @param numberOfBits	the amount of bits to add
+	 */
+	public void addBits(int value, int numberOfBits){
+		if(numberOfBits <= 0 || numberOfBits > 32){
+			return;
+		}
+		ensureCapacity(endPointer + numberOfBits);
+		
+		//Fill the remainder of the current byte, then each following byte
+		int remaining = numberOfBits;
+		while(remaining > 0){
+			int freeBits = 8 - (endPointer % 8);
+			int taken = Math.min(freeBits, remaining);
+			int bits = (int)((value >>> (remaining - taken)) & ((1L << taken) - 1));
+			data[endPointer >>> 3] = (byte)(data[endPointer >>> 3] | (bits << (freeBits - taken)));
+			endPointer += taken;
+			remaining -= taken;
 		}
 	}
+	
 	/**
 	 * <p>Adds a byte to the data the stream reads from.
 	 * 
 	 * @param byte_	the byte to be added to the bitStream
 	 */
 	public void addByte(byte byte_){
-		for(int i=0; i<8; i++){
-			byte bit = (byte) (byte_ >> 7-i);
-			this.addBit(bit);
-		}
+		addBits(byte_ & 0xFF, 8);
 	}
+	
 	/**
 	 * <p>Adds a byte array to the data the stream reads from.
 	 * 
+	 * <p>When the stream ends on a byte boundary the bytes are copied in directly.
+	 * 
 	 * @param bytes	the byte array to be added to the bitSteam
 	 */
 	public void addBytes(byte[] bytes){
-		for(int i=0; i<bytes.length; i++){
-			this.addByte(bytes[i]);
+		if(bytes.length == 0){
+			return;
+		}
+		if((endPointer % 8) == 0){
+			ensureCapacity(endPointer + (bytes.length * 8));
+			System.arraycopy(bytes, 0, data, endPointer >>> 3, bytes.length);
+			endPointer += bytes.length * 8;
+		}else{
+			for(int i=0; i<bytes.length; i++){
+				this.addByte(bytes[i]);
+			}
+		}
+	}
+	
+	/**
+	 * <p>Adds a range of bits from another bitStream to the data the stream reads from, 
+	 * leaving the pointer of the other bitStream where it is.
+	 * 
+	 * <p>Once the current byte has been filled, whole bytes are copied with 
+	 * System.arraycopy when the range starts on a byte boundary, or otherwise built 
+	 * from two shifted source bytes.
+	 * 
+	 * @param source		the bitStream to copy the bits from
+	 * @param sourceOffset	position in the source of the first bit to copy
+	 * @param numberOfBits	the amount of bits to copy
+	 * @throws BitStreamException	if the range is not within the source data
+	 */
+	public void copyBits(BitStream source, int sourceOffset, int numberOfBits) throws BitStreamException{
+		if(numberOfBits <= 0){
+			return;
+		}
+		if(sourceOffset < 0 || sourceOffset + numberOfBits > source.endPointer){
+			throw new BitStreamException("Copied bits outside of the source stream");
+		}
+		ensureCapacity(endPointer + numberOfBits);
+		int position = sourceOffset;
+		int remaining = numberOfBits;
+		
+		//Fill the current byte
+		if((endPointer % 8) != 0){
+			int taken = Math.min(8 - (endPointer % 8), remaining);
+			addBits(source.loadBits(position, taken), taken);
+			position += taken;
+			remaining -= taken;
+		}
+		
+		//Copy the whole bytes
+		int wholeBytes = remaining >>> 3;
+		int sourceIndex = position >>> 3;
+		int destIndex = endPointer >>> 3;
+		int shift = position % 8;
+		if(shift == 0){
+			System.arraycopy(source.data, sourceIndex, data, destIndex, wholeBytes);
+		}else{
+			byte[] sourceData = source.data;
+			for(int i=0; i<wholeBytes; i++){
+				data[destIndex + i] = (byte)((sourceData[sourceIndex + i] << shift) | 
+						((sourceData[sourceIndex + i + 1] & 0xFF) >>> (8 - shift)));
+			}
+		}
+		endPointer += wholeBytes * 8;
+		position += wholeBytes * 8;
+		remaining -= wholeBytes * 8;
+		
+		//Add the remaining bits
+		if(remaining > 0){
+			addBits(source.loadBits(position, remaining), remaining);
 		}
 	}
 	
@@ -198,25 +391,50 @@ public class BitStream {
 	 * <p>Produces a string representation of the byte data in the bitStream.
 	 */
 	public String toString(){
-		String returnString = "";
-		try{
-			int pos = this.getPosition();
-			this.resetStream();
-			for(int i=0; i<this.endPointer; i++){
-				returnString += Integer.toBinaryString(this.getBits(1)) ;
-			}
-			this.resetStream(pos);
-		}catch(BitStreamException e){
-			e.printStackTrace();
+		StringBuilder returnString = new StringBuilder(endPointer);
+		for(int i=0; i<this.endPointer; i++){
+			returnString.append((char)('0' + ((data[i >>> 3] >> (7 - (i % 8))) & 0b1)));
+		}
+		return returnString.toString();
+	}
+	
+	/**
+	 * <p>Writes the bytes of the bitStream data to an output stream, without 
+	 * copying or trimming the data array.
+	 * 
+	 * @param out	the output stream to write the bytes to
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out) throws IOException{
+		if(data != null){
+			out.write(data, 0, getLength());
+		}
+	}
+	
+	/**
+	 * <p>Puts the bytes of the bitStream data into a buffer, at its current position, 
+	 * without copying or trimming the data array.
+	 * 
+	 * @param buffer	the buffer to put the bytes in, having {@link #getLength()} bytes remaining
+	 */
+	public void writeTo(ByteBuffer buffer){
+		if(data != null){
+			buffer.put(data, 0, getLength());
 		}
-		return returnString;
 	}
 	
 	/**
 	 * <p>Gets the entire data array the bitStream contains.
+	 * 
+	 * <p>The data array is trimmed to the length of the data first, so is exactly 
+	 * as long as the bits added to it.
+	 * 
 	 * @return	byte array of the bitStream data.
 	 */
 	public byte[] getData(){
+		if(data != null && data.length != getLength()){
+			data = Arrays.copyOf(data, getLength());
+		}
 		return data;
 	}
 }
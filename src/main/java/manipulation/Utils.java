@@ -19,15 +19,22 @@ public final class Utils {
 	private Utils(){}
 	
 	/**
-	 * <p>Deletes the temp directory and files from the file system.
+	 * <p>Deletes the temp directory and files, including those in sub directories, from the file system.
 	 */
 	public static void removeTempFolder(){
-		File file = new File("./temp");
+		deleteRecursively(new File("./temp"));
+	}
+	
+	/**
+	 * <p>Deletes a file, or a directory and everything within it.
+	 * 
+	 * @param file	the file or directory to delete
+	 */
+	private static void deleteRecursively(File file){
 		if(file.isDirectory()){
 			String files[] = file.list();
 			for(String child : files) {
-				File childFile = new File(file, child);
-				childFile.delete();
+				deleteRecursively(new File(file, child));
 			}
 		}
 		file.delete();
@@ -8,6 +8,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -18,6 +19,7 @@ import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
 import manipulation.image.ImageEncoder;
+import manipulation.image.JPEG.CoefficientCache;
 import manipulation.image.JPEG.JPEGCodec;
 import manipulation.sound.AudioEncoder;
 import manipulation.sound.MP3.MP3Codec;
@@ -73,11 +75,17 @@ public class WorkFile {
 		this.fileCapacity = 0;
 		this.fileEBPB = 1;
 		
-		coverFileStream = new byte[(int)file.length()];
 		try{
-			FileInputStream fis = new FileInputStream(file);
-			fis.read(coverFileStream);
-			fis.close();
+			if(fileFormat == WorkFile.FILE_FORMAT_JPEG){
+				//Read onto the heap rather than mapped, the codec reading from it while embedding 
+				//and the stegotext possibly being saved over the cover file
+				coverFileStream = Files.readAllBytes(file.toPath());
+			}else{
+				coverFileStream = new byte[(int)file.length()];
+				FileInputStream fis = new FileInputStream(file);
+				fis.read(coverFileStream);
+				fis.close();
+			}
 			this.fileCapacity = ImageEncoder.getMaxMessageSize(this, fileEBPB);
 		}catch(FileNotFoundException e){
 			e.printStackTrace();
@@ -90,8 +98,11 @@ public class WorkFile {
 			fileStatus = WorkFile.FILE_STATUS_BAD;
 		}
 		if(fileFormat == WorkFile.FILE_FORMAT_JPEG){
+			//Only the headers are needed for the capacity, the scan is decoded (or loaded from the cache) when embedding
 			jpegCodec = new JPEGCodec();
-			jpegCodec.decodeStream(getCoverFileStream());
+			jpegCodec.setLazyDecoding(true);
+			jpegCodec.setCoefficientCache(new CoefficientCache());
+			jpegCodec.decodeStream(ByteBuffer.wrap(getCoverFileStream()));
 		}else if(fileFormat == WorkFile.FILE_FORMAT_MP3){
 			mp3Codec = new MP3Codec();
 			mp3Codec.decodeStream(getCoverFileStream());
@@ -0,0 +1,139 @@
+package manipulation.image.JPEG;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * <p>Class which handles an on disk cache of decoded JPEG scans, so a JPEG which has been
+ * decoded before does not need its entropy-coded data decoding again.
+ *
+ * <p>Entries are keyed by the SHA-256 hash of the JPEG's bytes, each being stored in its
+ * own file within the cache directory. Entries are written to a temporary file and then
+ * moved into place, so a partly written entry is never read. Entries are read onto the
+ * heap when loaded.
+ *
+ * @author Ashley Allott
+ */
+public class CoefficientCache {
+
+	/**
+	 * <p>The default cache directory, within the temp folder removed by {@link manipulation.Utils#removeTempFolder()}.
+	 */
+	public static final String DEFAULT_DIRECTORY = "./temp/cache";
+
+	private static final String ENTRY_EXTENSION = ".coef";
+
+	private File directory;
+
+	/**
+	 * <p>Constructor, creates a new cache using the default directory.
+	 */
+	public CoefficientCache(){
+		this(new File(DEFAULT_DIRECTORY));
+	}
+
+	/**
+	 * <p>Constructor, creates a new cache using the specified directory, which is created
+	 * when the first entry is stored.
+	 *
+	 * @param directory	the directory to store the entries in
+	 */
+	public CoefficientCache(File directory){
+		this.directory = directory;
+	}
+
+	/**
+	 * <p>Generates the key of a JPEG, being the hex string of the SHA-256 hash of its bytes.
+	 *
+	 * @param data	the buffer containing the JPEG, from index 0 to its limit
+	 * @return		the key of the JPEG
+	 * @throws Exception	if SHA-256 is not available
+	 */
+	public String getKey(ByteBuffer data) throws Exception{
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		ByteBuffer content = data.duplicate();
+		content.position(0);
+		digest.update(content);
+
+		byte[] hash = digest.digest();
+		StringBuilder key = new StringBuilder(hash.length * 2);
+		for(byte value: hash){
+			key.append(Character.forDigit((value >> 4) & 0x0F, 16));
+			key.append(Character.forDigit(value & 0x0F, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * <p>Loads a cache entry, reading it into a heap buffer.
+	 *
+	 * <p>The entry is not memory mapped, as a mapped file can't be deleted or replaced on
+	 * Windows until the mapping is released by the garbage collector.
+	 *
+	 * @param key	the key of the entry
+	 * @return		buffer containing the entry, or null if there is no entry or it can't be read
+	 */
+	public ByteBuffer load(String key){
+		File entryFile = new File(directory, key + ENTRY_EXTENSION);
+		if(!entryFile.isFile()){
+			return null;
+		}
+		try{
+			FileChannel channel = FileChannel.open(entryFile.toPath(), StandardOpenOption.READ);
+			try{
+				long size = channel.size();
+				if(size > Integer.MAX_VALUE){
+					return null;
+				}
+				ByteBuffer entry = ByteBuffer.allocate((int)size);
+				while(entry.hasRemaining()){
+					if(channel.read(entry) < 0){
+						return null;
+					}
+				}
+				entry.flip();
+				return entry;
+			}finally{
+				channel.close();
+			}
+		}catch(IOException e){
+			return null;
+		}
+	}
+
+	/**
+	 * <p>Stores a cache entry, replacing any existing entry with the same key.
+	 *
+	 * @param key	the key of the entry
+	 * @param parts	the buffers making up the entry, in order
+	 * @throws IOException
+	 */
+	public void store(String key, ByteBuffer[] parts) throws IOException{
+		if(!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()){
+			throw new IOException("Unable to create cache directory: " + directory);
+		}
+		Path tempPath = Files.createTempFile(directory.toPath(), key, ".tmp");
+		try{
+			FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE);
+			try{
+				for(ByteBuffer part: parts){
+					while(part.hasRemaining()){
+						channel.write(part);
+					}
+				}
+			}finally{
+				channel.close();
+			}
+			Files.move(tempPath, new File(directory, key + ENTRY_EXTENSION).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}finally{
+			Files.deleteIfExists(tempPath);
+		}
+	}
+}
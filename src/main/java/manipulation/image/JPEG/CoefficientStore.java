@@ -0,0 +1,149 @@
+package manipulation.image.JPEG;
+
+/**
+ * <p>Class which holds the quantised DCT coefficients of a JPEG scan.
+ *
+ * <p>The coefficients of each component are kept in a single contiguous short array, each
+ * DataUnit (block) taking {@link #BLOCK_SIZE} values: the DC value followed by the 63 AC
+ * values in the order they are coded. A component's blocks are stored MCU by MCU, so the
+ * block at (row, column) of a MCU is at index (mcu * blocksPerMCU) + (row * H) + column.
+ *
+ * <p>Blocks are also numbered in scan order (each MCU in turn, each component in turn),
+ * this being the order in which messages are embedded.
+ *
+ * @author Ashley Allott
+ */
+public class CoefficientStore {
+
+	public static final int BLOCK_SIZE = 64;
+
+	private short[][] data;
+	private int[] componentBlocksPerMCU;
+
+	private int mcuCount;
+	private int blocksPerMCU;
+
+	private int[] unitComponents;
+	private int[] unitBlocks;
+
+	/**
+	 * <p>Constructor, creates a new, zeroed store for the given scan layout.
+	 *
+	 * @param mcuCount				the amount of MCU's in the scan
+	 * @param componentBlocksPerMCU	the amount of blocks each component has in a MCU, in scan order
+	 */
+	public CoefficientStore(int mcuCount, int[] componentBlocksPerMCU){
+		this.mcuCount = mcuCount;
+		this.componentBlocksPerMCU = componentBlocksPerMCU.clone();
+
+		blocksPerMCU = 0;
+		for(int blocks: componentBlocksPerMCU){
+			blocksPerMCU += blocks;
+		}
+
+		data = new short[componentBlocksPerMCU.length][];
+		unitComponents = new int[blocksPerMCU];
+		unitBlocks = new int[blocksPerMCU];
+		int unit = 0;
+		for(int c=0; c<componentBlocksPerMCU.length; c++){
+			data[c] = new short[mcuCount * componentBlocksPerMCU[c] * BLOCK_SIZE];
+			for(int b=0; b<componentBlocksPerMCU[c]; b++){
+				unitComponents[unit] = c;
+				unitBlocks[unit] = b;
+				unit++;
+			}
+		}
+	}
+
+	/**
+	 * <p>Gets the amount of MCU's in the store.
+	 *
+	 * @return	the amount of MCU's
+	 */
+	public int getMCUCount(){
+		return mcuCount;
+	}
+
+	/**
+	 * <p>Gets the total amount of blocks in each MCU, across all components.
+	 *
+	 * @return	the amount of blocks in a MCU
+	 */
+	public int getBlocksPerMCU(){
+		return blocksPerMCU;
+	}
+
+	/**
+	 * <p>Gets the total amount of blocks in the store.
+	 *
+	 * @return	the amount of blocks
+	 */
+	public int getBlockCount(){
+		return mcuCount * blocksPerMCU;
+	}
+
+	/**
+	 * <p>Gets the coefficient array of a component.
+	 *
+	 * @param component	the index of the component, in scan order
+	 * @return			the component's coefficients
+	 */
+	public short[] getComponentData(int component){
+		return data[component];
+	}
+
+	/**
+	 * <p>Gets the index of the first coefficient of a component's block.
+	 *
+	 * @param component	the index of the component, in scan order
+	 * @param mcu		the index of the MCU
+	 * @param block		the index of the block within the component's part of the MCU
+	 * @return			the index in the component's coefficient array
+	 */
+	public int getBlockOffset(int component, int mcu, int block){
+		return ((mcu * componentBlocksPerMCU[component]) + block) * BLOCK_SIZE;
+	}
+
+	/**
+	 * <p>Gets the component of a block, numbered in scan order.
+	 *
+	 * @param unit	the scan order index of the block
+	 * @return		the index of the component the block belongs to
+	 */
+	public int getUnitComponent(int unit){
+		return unitComponents[unit % blocksPerMCU];
+	}
+
+	/**
+	 * <p>Gets the index of the first coefficient of a block, numbered in scan order.
+	 *
+	 * @param unit	the scan order index of the block
+	 * @return		the index in the coefficient array of the block's component
+	 */
+	public int getUnitOffset(int unit){
+		int mcuUnit = unit % blocksPerMCU;
+		return getBlockOffset(unitComponents[mcuUnit], unit / blocksPerMCU, unitBlocks[mcuUnit]);
+	}
+
+	/**
+	 * <p>Creates a MCU view of the coefficients, the values are copied out of the store.
+	 *
+	 * @param mcu	the index of the MCU
+	 * @return		MCU containing a DataUnit for each block
+	 */
+	public MCU getMCU(int mcu){
+		MCU currentMCU = new MCU();
+		for(int unit=0; unit<blocksPerMCU; unit++){
+			short[] values = data[unitComponents[unit]];
+			int offset = getBlockOffset(unitComponents[unit], mcu, unitBlocks[unit]);
+
+			DataUnit dataUnit = new DataUnit();
+			dataUnit.dcValue = values[offset];
+			for(int i=0; i<63; i++){
+				dataUnit.acValues[i] = values[offset + 1 + i];
+			}
+			currentMCU.addDataUnit(dataUnit);
+		}
+		return currentMCU;
+	}
+}
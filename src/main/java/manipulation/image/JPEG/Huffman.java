@@ -6,6 +6,13 @@ import java.util.Arrays;
 /**
  * <p>Class which handles Huffman Table of a JPEG image
  * 
+ * <p>Codes are assigned canonically from the code lengths, as the JPEG specification does: 
+ * the symbols are kept in order of their code length, each code being one more than the 
+ * previous code, shifted left when the length increases.
+ * 
+ * <p>A table can also be generated from the frequencies of the symbols it is to code, 
+ * giving the optimal code lengths limited to 16 bits.
+ * 
  * @author Ashley Allott
  */
 public class Huffman {
@@ -13,17 +20,30 @@ public class Huffman {
 	public short tableClass;
 	public short tableID;
 	public ArrayList<Pair> symbolLengths; 
-	public int maxSymbolLength;
-	public HuffmanTree huffmanTree;
 	
 	/**
-	 * <p>vClass for storing a pair - a symbol and it's Huffman code
+	 * <p>The amount of bits resolved by a single lookup when decoding.
+	 */
+	public static final int LOOKUP_BITS = 9;
+	
+	private int[] lookup;
+	private int[] maxCode;
+	private int[] valueOffset;
+	private short[] codeValues;
+	
+	private int[] symbolCodes = new int[256];
+	private byte[] symbolCodeLengths = new byte[256];
+	
+	private int maxLength;
+	private int nextCode;
+	
+	/**
+	 * <p>vClass for storing a pair - a symbol and the length of it's Huffman code
 	 * @author Ashley Allott
 	 */
 	class Pair{
 		public short symbol;
 		public short length;
-		public String huffmanCode;
 		
 		/**
 		 * <p>Constructor, creates a new Pair
@@ -37,76 +57,6 @@ public class Huffman {
 		}
 	}
 	
-	/**
-	 * <p>Class for handling Huffman Trees.
-	 * @author Ashley Allott
-	 */
-	class HuffmanTree{
-		public boolean set;
-		public short symbol;
-		public HuffmanTree left;
-		public HuffmanTree right;
-		public int codeLength;
-		public boolean rightmost;
-		
-		/**
-		 * <p>Constructor, creates a new empty tree.
-		 */
-		public HuffmanTree(){
-			this.set = false;
-		}
-		/**
-		 * <p>Constructor, creates a new empty tree with the current symbol.
-		 * 
-		 * @param symbol	the symbol to set the current tree node to
-		 */
-		public HuffmanTree(byte symbol){
-			this.set = true;
-			this.symbol = symbol;
-		}
-		/**
-		 * <p>Set the symbol of the current node.
-		 * 
-		 * @param symbol	the symbol to be set to
-		 */
-		public void setSymbol(byte symbol){
-			this.set = true;
-			this.symbol = symbol;
-		}
-		/**
-		 * <p>Set the left node pointer of the current node.
-		 * 
-		 * @param left	the HuffmanTree node to add to the left
-		 */
-		public void addLeft(HuffmanTree left){
-			this.left = left;
-		}
-		/**
-		 * <p>Set the right node pointer of the current node.
-		 * 
-		 * @param right	the HuffmanTree node to add to the right
-		 */
-		public void addRight(HuffmanTree right){
-			this.right = right;
-		}
-		/**
-		 * <p>Gets the depth of the current Huffman tree.
-		 * 
-		 * @return	integer value of the tree depth
-		 */
-		public int depth(){
-			int depth = 0;
-			if(this.left != null && this.right != null){
-				depth = depth + Math.max(this.left.depth(), this.right.depth());
-			}else if(this.left != null){
-				depth = depth + this.left.depth();
-			}else if(this.right != null){
-				depth = depth + this.right.depth();
-			}
-			return depth + 1;
-		}
-	}
-	
 	/**
 	 * <p>Constructor, creates a new Huffman using the specified parameters.
 	 * 
@@ -119,7 +69,6 @@ public class Huffman {
 		this.tableClass = tableClass;
 		this.tableID = tableID;
 		this.symbolLengths = new ArrayList<Pair>();
-		this.maxSymbolLength = codeLengths.length+1;
 		
 		short ctr = 0;
 		for(int i=0; i<codeLengths.length; i++){
@@ -128,43 +77,156 @@ public class Huffman {
 				ctr++;
 			}
 		}
-		this.huffmanTree = generateCodes();
+		buildCodeTables();
 	}
 	
 	/**
-	 * <p>Generates the JPEG specified string of the current Huffman structure for writing the JPEG file.
+	 * <p>Constructor, creates a new Huffman with the optimal codes for the supplied symbol frequencies.
 	 * 
-	 * @return	string representation of the JPEG file
+	 * @param tableClass	the class of the Huffman table
+	 * @param tableID		the id of the Huffman table
+	 * @param frequencies	a 256 long array containing the amount of times each symbol is coded
 	 */
-	public String genDHTString(){
-		generateCodes();
-		short[] codeLengths = new short[16];
-		short[] codeSymbols = new short[0];
-		int codeCount = 0;
-		for(int i=0; i<codeLengths.length;i++){
-			for(int j=0; j<symbolLengths.size(); j++){
-				if(symbolLengths.get(j).length == (i+1)){
-					codeLengths[i] = (short)(codeLengths[i] + 1);
-					if(codeCount >= codeSymbols.length){
-						codeSymbols = Arrays.copyOf(codeSymbols, codeSymbols.length+1);
+	public Huffman(short tableClass, short tableID, long[] frequencies){
+		this.tableClass = tableClass;
+		this.tableID = tableID;
+		this.symbolLengths = new ArrayList<Pair>();
+		
+		generateOptimalLengths(frequencies);
+		buildCodeTables();
+	}
+	
+	/**
+	 * <p>Generates the symbol lengths of an optimal table, using the procedure given in 
+	 * Annex K.2 of the JPEG specification.
+	 * 
+	 * <p>A reserved symbol with a frequency of 1 is included when building the code, so that 
+	 * no code is made up of only 1 bits. Codes longer than 16 bits are then removed by moving 
+	 * pairs of symbols up the tree, before the reserved symbol is taken out.
+	 * 
+	 * @param frequencies	a 256 long array containing the amount of times each symbol is coded
+	 */
+	private void generateOptimalLengths(long[] frequencies){
+		long[] freq = new long[257];
+		int[] codeSize = new int[257];
+		int[] others = new int[257];
+		for(int i=0; i<256; i++){
+			freq[i] = frequencies[i];
+		}
+		freq[256] = 1;
+		Arrays.fill(others, -1);
+		
+		while(true){
+			//Find the two least frequent symbols, preferring the larger value on ties
+			int v1 = -1;
+			int v2 = -1;
+			for(int i=0; i<257; i++){
+				if(freq[i] != 0 && (v1 == -1 || freq[i] <= freq[v1])){
+					v1 = i;
+				}
+			}
+			for(int i=0; i<257; i++){
+				if(freq[i] != 0 && i != v1 && (v2 == -1 || freq[i] <= freq[v2])){
+					v2 = i;
+				}
+			}
+			if(v2 == -1){
+				break;
+			}
+			
+			//Merge the two branches, lengthening the codes of each
+			freq[v1] += freq[v2];
+			freq[v2] = 0;
+			codeSize[v1]++;
+			while(others[v1] != -1){
+				v1 = others[v1];
+				codeSize[v1]++;
+			}
+			others[v1] = v2;
+			codeSize[v2]++;
+			while(others[v2] != -1){
+				v2 = others[v2];
+				codeSize[v2]++;
+			}
+		}
+		
+		//With no symbols coded the reserved symbol is never merged, so give it a single code
+		if(codeSize[256] == 0){
+			codeSize[256] = 1;
+		}
+		
+		int[] bits = new int[258];
+		for(int i=0; i<257; i++){
+			if(codeSize[i] != 0){
+				bits[codeSize[i]]++;
+			}
+		}
+		
+		//Limit the codes to 16 bits
+		for(int i=257; i>16; i--){
+			while(bits[i] > 0){
+				int j = i - 2;
+				while(bits[j] == 0){
+					j--;
+				}
+				bits[i] -= 2;
+				bits[i-1]++;
+				bits[j+1] += 2;
+				bits[j]--;
+			}
+		}
+		
+		//Remove the reserved symbol, which has one of the longest codes
+		int longest = 16;
+		while(bits[longest] == 0){
+			longest--;
+		}
+		bits[longest]--;
+		
+		//Symbols are ordered by their code length, the lengths then being given by the counts
+		int length = 1;
+		for(int size=1; size<=256; size++){
+			for(int symbol=0; symbol<256; symbol++){
+				if(codeSize[symbol] == size){
+					while(bits[length] == 0){
+						length++;
 					}
-					codeSymbols[codeCount] = symbolLengths.get(j).symbol;
-					codeCount++;
+					bits[length]--;
+					symbolLengths.add(new Pair((short)symbol, (short)length));
 				}
 			}
 		}
-		String huffmanString = "";
-		byte tableClass = (byte)this.tableClass;
-		byte tableID = (byte)this.tableID;
-		byte identifierByte = (byte)((tableClass << 4) | (tableID) & 0xFF);
-		huffmanString = huffmanString + Integer.toBinaryString((identifierByte & 0xFF)+ 0x100).substring(1);
-		for(int i=0; i<codeLengths.length;i++){
-			huffmanString = huffmanString + Integer.toBinaryString((codeLengths[i] & 0xFF)+ 0x100).substring(1);
+	}
+	
+	/**
+	 * <p>Generates the JPEG specified string of the current Huffman structure for writing the JPEG file.
+	 * 
+	 * @return	string representation of the JPEG file
+	 */
+	public String genDHTString(){
+		byte[] dhtBytes = genDHTBytes();
+		StringBuilder huffmanString = new StringBuilder(dhtBytes.length * 8);
+		for(int i=0; i<dhtBytes.length; i++){
+			huffmanString.append(Integer.toBinaryString((dhtBytes[i] & 0xFF) + 0x100).substring(1));
 		}
-		for(int i=0; i<codeSymbols.length;i++){
-			huffmanString = huffmanString + Integer.toBinaryString((codeSymbols[i] & 0xFF)+ 0x100).substring(1);
+		return huffmanString.toString();
+	}
+	
+	/**
+	 * <p>Generates the JPEG specified bytes of the current Huffman structure for writing the JPEG file, 
+	 * being the table class and id, the amount of codes of each length, and the symbols.
+	 * 
+	 * @return	byte array containing the table definition
+	 */
+	public byte[] genDHTBytes(){
+		byte[] dhtBytes = new byte[17 + symbolLengths.size()];
+		dhtBytes[0] = (byte)((tableClass << 4) | (tableID & 0x0F));
+		for(int i=0; i<symbolLengths.size(); i++){
+			Pair pair = symbolLengths.get(i);
+			dhtBytes[pair.length]++;
+			dhtBytes[17 + i] = (byte)pair.symbol;
 		}
-		return huffmanString;
+		return dhtBytes;
 	}
 	
 	/**
@@ -175,73 +237,113 @@ public class Huffman {
 	 * @throws Exception
 	 */
 	public byte getSymbol(String code) throws Exception{
-		for(int i=0; i<symbolLengths.size(); i++){
-			if(symbolLengths.get(i).huffmanCode.equals(code)){
-				return (byte)symbolLengths.get(i).symbol;
+		int length = code.length();
+		if(length > 0 && length <= 16){
+			int decoded = decode(Integer.parseInt(code, 2) << (16 - length));
+			if(decoded != -1 && (decoded >> 8) == length){
+				return (byte)decoded;
 			}
 		}
 		throw new Exception("Symbol not present for given code");
 	}
 	
 	/**
-	 * <p>Gets the Huffman code, if present, for the supplied symbol.
+	 * <p>Decodes the symbol at the start of a window of peeked scan bits.
 	 * 
-	 * @param symbol	the symbol matching the required code
-	 * @return			the code corresponding to the supplied symbol
-	 * @throws Exception
+	 * <p>Codes up to {@link #LOOKUP_BITS} long are resolved by a single table lookup, 
+	 * longer codes are checked against the canonical maximum code of each length.
+	 * 
+	 * @param window	the next 16 bits of the scan, most significant bit first
+	 * @return			the code length shifted left 8 bits, combined with the symbol, 
+	 * 					or -1 if no code matches the window
 	 */
-	public String getCode(byte symbol) throws Exception{
-		String searchSymbol = Integer.toBinaryString((symbol & 0xFF)+ 0x100).substring(1);
-		for(int i=0; i<symbolLengths.size(); i++){
-			String treeSymbol = Integer.toBinaryString((symbolLengths.get(i).symbol & 0xFF)+ 0x100).substring(1);
-			//System.out.println("I.s: " + Integer.toBinaryString((symbolLengths.get(i).symbol & 0xFF)+ 0x100).substring(1));
-			if(treeSymbol.equalsIgnoreCase(searchSymbol)){
-				return symbolLengths.get(i).huffmanCode;
+	public int decode(int window){
+		int entry = lookup[(window >>> (16 - LOOKUP_BITS)) & ((1 << LOOKUP_BITS) - 1)];
+		if(entry != 0){
+			return entry;
+		}
+		for(int length=LOOKUP_BITS+1; length<=16; length++){
+			int code = (window >>> (16 - length)) & ((1 << length) - 1);
+			if(code <= maxCode[length]){
+				return (length << 8) | codeValues[code + valueOffset[length]];
 			}
 		}
-		throw new Exception("Code not present for given symbol");
+		return -1;
 	}
 	
 	/**
-	 * <p>Constructs a Huffman tree to generate the huffman codes for the symbols.
+	 * <p>Builds the decoding and encoding tables from the symbol lengths, assigning the codes 
+	 * in canonical order (by length, then by table order) as the JPEG specification does.
 	 * 
-	 * @return	the completed Huffman tree, populated with codes and matching symbols.
+	 * <p>The symbols are kept in order of their code length, so the codes are assigned in 
+	 * a single pass. The next free code, at the longest length, is recorded for adding symbols.
 	 */
-	private HuffmanTree generateCodes(){			
-		HuffmanTree tree = this.createTree(maxSymbolLength);
+	private void buildCodeTables(){
+		Arrays.fill(symbolCodeLengths, (byte)0);
+		lookup = new int[1 << LOOKUP_BITS];
+		maxCode = new int[18];
+		valueOffset = new int[18];
+		codeValues = new short[symbolLengths.size()];
+		Arrays.fill(maxCode, -1);
 		
-		for(int i=0; i<maxSymbolLength; i++){
-			for(int j=0; j<symbolLengths.size(); j++){
-				if(symbolLengths.get(j).length == i){
-					tree = addSymbol(tree, symbolLengths.get(j).symbol, symbolLengths.get(j).length, tree.depth());
-				}
+		int code = 0;
+		int length = 0;
+		for(int i=0; i<symbolLengths.size(); i++){
+			Pair pair = symbolLengths.get(i);
+			while(length < pair.length){
+				//Move to the next code length
+				code = code << 1;
+				length++;
+				valueOffset[length] = i - code;
+			}
+			codeValues[i] = (short)(pair.symbol & 0xFF);
+			symbolCodes[pair.symbol & 0xFF] = code;
+			symbolCodeLengths[pair.symbol & 0xFF] = (byte)length;
+			if(length <= LOOKUP_BITS){
+				int shift = LOOKUP_BITS - length;
+				int entry = (length << 8) | (pair.symbol & 0xFF);
+				Arrays.fill(lookup, code << shift, (code + 1) << shift, entry);
 			}
+			maxCode[length] = code;
+			code++;
 		}
-		getCodesFromTree(tree, "");
-		return tree;
-		
+		maxLength = length;
+		nextCode = code;
 	}
 	
 	/**
-	 * <p>Populates the supplied HuffmanTree with Huffman codes.
+	 * <p>Gets the Huffman code, if present, for the supplied symbol.
 	 * 
-	 * @param tree			the huffman tree, populated with symbols, 
-	 * 						to add huffman codes to
-	 * @param huffmanCode	the current huffman code to be added to a matching symbol
+	 * @param symbol	the symbol matching the required code
+	 * @return			the code corresponding to the supplied symbol
+	 * @throws Exception
 	 */
-	private void getCodesFromTree(HuffmanTree tree, String huffmanCode){
-		if(tree != null){
-			if(tree.set == true){
-				for(int i=0; i<symbolLengths.size(); i++){
-					if(symbolLengths.get(i).symbol == tree.symbol){
-						symbolLengths.get(i).huffmanCode = huffmanCode;
-					}
-				}
-			}else{
-				getCodesFromTree(tree.left, huffmanCode + "0");
-				getCodesFromTree(tree.right, huffmanCode + "1");
-			}
+	public String getCode(byte symbol) throws Exception{
+		int length = getCodeLength(symbol);
+		if(length == 0){
+			throw new Exception("Code not present for given symbol");
 		}
+		return Integer.toBinaryString(getCodeValue(symbol) | (1 << length)).substring(1);
+	}
+	
+	/**
+	 * <p>Gets the bits of the Huffman code for the supplied symbol.
+	 * 
+	 * @param symbol	the symbol matching the required code
+	 * @return			the code, rightmost aligned, or 0 if the symbol is not present
+	 */
+	public int getCodeValue(byte symbol){
+		return symbolCodes[symbol & 0xFF];
+	}
+	
+	/**
+	 * <p>Gets the length of the Huffman code for the supplied symbol.
+	 * 
+	 * @param symbol	the symbol matching the required code
+	 * @return			the length of the code, or 0 if the symbol is not present
+	 */
+	public int getCodeLength(byte symbol){
+		return symbolCodeLengths[symbol & 0xFF];
 	}
 	
 	/**
@@ -253,14 +355,14 @@ public class Huffman {
 	 * @throws Exception
 	 */
 	public String addNewSymbol(byte symbol) throws Exception{
-		try{
+		if(getCodeLength(symbol) != 0){
 			return this.getCode(symbol);
-		}catch(Exception e){}
+		}
 		
 		if(checkSpace()){
 			int insertLength = spaceLength();
 			this.symbolLengths.add(new Pair(symbol, (short)(insertLength)));
-			this.huffmanTree = generateCodes();
+			buildCodeTables();
 			return this.getCode(symbol);
 		}
 		throw new Exception("Code not present for given symbol");
@@ -283,134 +385,19 @@ public class Huffman {
 	/**
 	 * <p>Checks if there is space in the current Huffman table for new codes.
 	 * 
+	 * <p>New codes are placed after the existing codes, at the longest length used or longer, 
+	 * so the existing codes are unchanged. A code made up of only 1 bits is not allowed.
+	 * 
 	 * @return 	integer value indicating the length at which there 
 	 * 			is space to add a new symbol
 	 */
 	public int spaceLength(){
-		int maxLength = 0;
-		for(int i=0; i<symbolLengths.size(); i++){
-			maxLength = Math.max(maxLength, symbolLengths.get(i).length);
-		}
 		for(int i=maxLength; i<16; i++){
-			if(checkSpaceInTree(huffmanTree, (short)i)){
+			if((nextCode << (i - maxLength)) < (1 << i) - 1){
 				return i;
 			}
 		}
 		return -1;
 	}
-	
-	/**
-	 * <p>Checks if there is space in the tree for a symbol of a specified length.
-	 * 
-	 * @param tree		the HuffmanTree to check if there is space in
-	 * @param length	the length to check for space for.
-	 * @return			boolean value indiate if there is space in the tree
-	 */
-	private boolean checkSpaceInTree(HuffmanTree tree, short length){	
-		if(tree == null){
-			return false;
-		}
-		if(tree.set){
-			return false;
-		}
-		if(tree.codeLength == length){
-			if(tree.rightmost == true){
-				return checkSpaceInTree(tree.left, length) | checkSpaceInTree(tree.right, length);
-			}else{
-				return true;
-			}
-		}else{
-			return checkSpaceInTree(tree.left, length) | checkSpaceInTree(tree.right, length);
-		}
-	}
-	
-	/**
-	 * <p>Adds the specified symbol to the Huffman tree, returning the modified tree.
-	 * 
-	 * @param tree			the HuffmanTree to add the symbol to
-	 * @param symbol		the symbol to be added
-	 * @param length		the length fo the symbol
-	 * @param totalDepth	the total depth of the tree
-	 * @return				the modified HuffmanTree
-	 */
-	public HuffmanTree addSymbol(HuffmanTree tree, short symbol, short length, int totalDepth){
-		if(tree == null)return null;
-		if(tree.codeLength == length){
-			if(tree.set == false){
-				tree.set = true;
-				tree.symbol = symbol;
-				tree.left = null;
-				tree.right = null;
-				return tree;
-			}else{
-				return null;
-			}
-		}else{
-			if(tree.left != null){
-				HuffmanTree leftInsert = addSymbol(tree.left, symbol, length, totalDepth);
-				if(leftInsert != null){
-					tree.left = leftInsert;
-					return tree;
-				}
-			}
-			if(tree.right != null){
-				HuffmanTree rightInsert = addSymbol(tree.right, symbol, length, totalDepth);
-				if(rightInsert != null){
-					tree.right = rightInsert;
-					return tree;
-				}
-			}
-			return null;
-		}
-	}
-	
-	/**
-	 * <p>Creates a new tree of the required size (depth).
-	 * 
-	 * @param maxSize	the depth of the tree
-	 * @return			the created HuffmanTree
-	 */
-	private HuffmanTree createTree(int maxSize){
-		HuffmanTree root = new HuffmanTree();
-		root.codeLength = 0;
-		
-		return extendTree(root, maxSize, 0, true);
-	}
-	
-	/**
-	 * <p>Extends a given tree to the specified depth.
-	 * 
-	 * @param tree			the HuffmanTree to be extended
-	 * @param depth			the depth required
-	 * @param nodeDepth		the depth the current node is located at
-	 * @param rightMost		boolean indicating if the current node is the right most node
-	 * @return
-	 */
-	private HuffmanTree extendTree(HuffmanTree tree, int depth, int nodeDepth, boolean rightMost){
-		if(tree!=null)tree.codeLength = nodeDepth;
-		if(nodeDepth >= depth){
-			return tree;
-		}else{
-			if(tree.set == false){
-				if(tree.left == null){
-					tree.left = new HuffmanTree();
-					tree.left.rightmost = false;
-					extendTree(tree.left, depth, (nodeDepth+1), false);
-				}else{
-					extendTree(tree.left, depth, (nodeDepth+1), false);
-				}
-				if(tree.right == null){
-					tree.right = new HuffmanTree();
-					tree.right.rightmost = rightMost;
-					extendTree(tree.right, depth, (nodeDepth+1), rightMost);
-				}else{
-					extendTree(tree.right, depth, (nodeDepth+1), rightMost);
-				}
-				return tree;
-			}else{
-				return tree;
-			}
-		}
-	}
-	
+
 }
@@ -1,11 +1,17 @@
 package manipulation.image.JPEG;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import manipulation.Codec;
 import manipulation.MessageTooLargeException;
@@ -28,19 +34,39 @@ public class JPEGCodec implements Codec{
 	public static final byte MARKER_TYPE_DQT = (byte)0xDB;
 	public static final byte MARKER_TYPE_DRI = (byte)0xDD;
 	public static final byte MARKER_TYPE_SOS = (byte)0xDA;
+	public static final byte MARKER_TYPE_RST_START = (byte)0xD0;
+	public static final byte MARKER_TYPE_RST_END = (byte)0xD7;
+	public static final byte MARKER_TYPE_TEM = (byte)0x01;
 	public static final byte MARKER_TYPE_APP_START = (byte)0xE0;
 	public static final byte MARKER_TYPE_APP_END = (byte)0xEF;
 	public static final byte MARKER_TYPE_COM = (byte)0xFE;
 	
-	byte[] originalBytes;
+	ByteBuffer originalData;
 	int scanDataLength = -1;
 	
-	byte currentMarkerType;
-	byte[] currentMarker = null;
-	int currentMarkerPos = 0;
+	private ArrayList<Segment> segments;
+	
+	private static final int CHANNEL_READ_SIZE = 64 * 1024;
 	
 	private int restartInterval;
 	
+	public static final int PARALLEL_MIN_MCUS = 64;
+	private boolean parallelDecoding = true;
+	private boolean parallelEncoding = true;
+	
+	public static final int RESTART_INTERVAL_COVER = -1;
+	private int outputRestartInterval = RESTART_INTERVAL_COVER;
+	
+	private boolean incrementalEncoding = true;
+	private long[] mcuBitEnds;
+	private int[] scanIntervalStarts;
+	private int[] scanIntervalEnds;
+	private boolean scanPositionsValid;
+	private int changedFirstMCU = Integer.MAX_VALUE;
+	private int changedLastMCU = 0;
+	
+	private boolean optimisedHuffmanTables = false;
+	
 	private int imageX;
 	private int imageY;
 	
@@ -51,7 +77,17 @@ public class JPEGCodec implements Codec{
 	private Map<Integer, Huffman> huffmanTablesDC;
 	private Map<Integer, Huffman> huffmanTablesAC;
 	
-	private ArrayList<MCU> mcuList;
+	private CoefficientStore coefficients;
+	private int scanMCUCount;
+	private int[] scanComponentBlocks;
+	private int scanBlockCount;
+	
+	private boolean lazyDecoding = false;
+	private int pendingScanStart = -1;
+	private int pendingScanEnd;
+	
+	private CoefficientCache coefficientCache = null;
+	private static final int CACHE_ENTRY_MAGIC = 0x4A434301;
 	
 	/**
 	 * <p>Constructor. Creates a new, empty JPEGCodec ready to decode JPEG data bytes.
@@ -60,7 +96,6 @@ public class JPEGCodec implements Codec{
 		imageComponents = new ArrayList<Component>();
 		huffmanTablesDC = new HashMap<Integer, Huffman>();
 		huffmanTablesAC = new HashMap<Integer, Huffman>();
-		mcuList = new ArrayList<MCU>();
 	}
 	/**
 	 * {@inheritDoc}
@@ -68,203 +103,209 @@ public class JPEGCodec implements Codec{
 	 * <p>Reads a given JPEG byte array
 	 */
 	public void decodeStream(byte[] imageBytes) throws Exception{
-		originalBytes = imageBytes;
-		for(int i=0; i< imageBytes.length; i++){
-			if(imageBytes[i] == (byte)0xFF){
-				i++;
-				if(imageBytes[i] == MARKER_TYPE_SOI){
-					handleCurrentMarker();
-				}else if(imageBytes[i] == MARKER_TYPE_SOF_BASELINE){
-					handleCurrentMarker();
-					
-					byte[] length = new byte[2];
-					i++;
-					length[0] = imageBytes[i];
-					i++;
-					length[1] = imageBytes[i];
-					short markerLength = (short) ((length[0] << 8) | (length[1] & 0xFF));
-					
-					currentMarkerType = MARKER_TYPE_SOF_BASELINE;
-					currentMarker = new byte[markerLength];
-					currentMarker[currentMarkerPos] = imageBytes[i-1];
-					currentMarkerPos++;
-					currentMarker[currentMarkerPos] = imageBytes[i];
-					currentMarkerPos++;
-				}else if(imageBytes[i] == MARKER_TYPE_SOF_EXTENDED){
-					handleCurrentMarker();
-					
-					byte[] length = new byte[2];
-					i++;
-					length[0] = imageBytes[i];
-					i++;
-					length[1] = imageBytes[i];
-					short markerLength = (short) ((length[0] << 8) | (length[1] & 0xFF));
-					
-					currentMarkerType = MARKER_TYPE_SOF_EXTENDED;
-					currentMarker = new byte[markerLength];
-					currentMarker[currentMarkerPos] = imageBytes[i-1];
-					currentMarkerPos++;
-					currentMarker[currentMarkerPos] = imageBytes[i];
-					currentMarkerPos++;
-				}else if(imageBytes[i] == MARKER_TYPE_DHT){
-					handleCurrentMarker();
-
-					byte[] length = new byte[2];
-					i++;
-					length[0] = imageBytes[i];
-					i++;
-					length[1] = imageBytes[i];
-					short markerLength = (short) ((length[0] << 8) | (length[1] & 0xFF));
-					
-					currentMarkerType = MARKER_TYPE_DHT;
-					currentMarker = new byte[markerLength];
-					currentMarker[currentMarkerPos] = imageBytes[i-1];
-					currentMarkerPos++;
-					currentMarker[currentMarkerPos] = imageBytes[i];
-					currentMarkerPos++;
-				}else if(imageBytes[i] == MARKER_TYPE_DQT){
-					handleCurrentMarker();
-				}else if(imageBytes[i] == MARKER_TYPE_DRI){
-					handleCurrentMarker();
-
-					byte[] length = new byte[2];
-					i++;
-					length[0] = imageBytes[i];
-					i++;
-					length[1] = imageBytes[i];
-					short markerLength = (short) ((length[0] << 8) | (length[1] & 0xFF));
-					
-					currentMarkerType = MARKER_TYPE_DRI;
-					currentMarker = new byte[markerLength];
-					currentMarker[currentMarkerPos] = imageBytes[i-1];
-					currentMarkerPos++;
-					currentMarker[currentMarkerPos] = imageBytes[i];
-					currentMarkerPos++;
-				}else if(imageBytes[i] == MARKER_TYPE_SOS){
-					handleCurrentMarker();
-
-					byte[] length = new byte[2];
-					i++;
-					length[0] = imageBytes[i];
-					i++;
-					length[1] = imageBytes[i];
-					short markerLength = (short) ((length[0] << 8) | (length[1] & 0xFF));
-					
-					currentMarkerType = MARKER_TYPE_SOS;
-					currentMarker = new byte[markerLength];
-					currentMarker[currentMarkerPos] = imageBytes[i-1];
-					currentMarkerPos++;
-					currentMarker[currentMarkerPos] = imageBytes[i];
-					currentMarkerPos++;				
-				}else if(imageBytes[i] == MARKER_TYPE_COM){
-					handleCurrentMarker();
-				}else if(imageBytes[i] >= MARKER_TYPE_APP_START && imageBytes[i] <= MARKER_TYPE_APP_END){
-					handleCurrentMarker();
-				}else if(imageBytes[i] == MARKER_TYPE_EOI){
-					handleCurrentMarker();
-					break;
-				}else if(imageBytes[i] == 0x00){
-					//STUFF BYTE
-					if(currentMarker != null){
-						if(currentMarkerPos >= currentMarker.length){
-							currentMarker = Arrays.copyOf(currentMarker, currentMarker.length + 1);
-						}
-						currentMarker[currentMarkerPos] = imageBytes[i-1];
-						currentMarkerPos++;
-					}
-				}
-			}else{
-				if(currentMarker != null){
-					if(currentMarkerPos >= currentMarker.length){
-						currentMarker = Arrays.copyOf(currentMarker, currentMarker.length + 1);
-					}
-					currentMarker[currentMarkerPos] = imageBytes[i];
-					currentMarkerPos++;
-				}
+		decodeStream(ByteBuffer.wrap(imageBytes));
+	}
+	
+	/**
+	 * <p>Reads a JPEG from a buffer, starting at its current position.
+	 * 
+	 * <p>The buffer is kept rather than copied, the segments which are unchanged by 
+	 * embedding being copied from it by genStego, so it must not be modified while 
+	 * the codec is in use. A MappedByteBuffer lets the JPEG be decoded without 
+	 * reading the file onto the heap.
+	 * 
+	 * @param imageData	the buffer containing the JPEG
+	 * @throws Exception
+	 */
+	public void decodeStream(ByteBuffer imageData) throws Exception{
+		originalData = imageData.slice();
+		segments = indexSegments(originalData);
+		for(Segment segment: segments){
+			handleSegment(originalData, segment);
+		}
+	}
+	
+	/**
+	 * <p>Reads a JPEG from a channel, from its current position to the end of the stream.
+	 * 
+	 * <p>A FileChannel is mapped into memory rather than read, so only the decoded 
+	 * coefficients and the offsets of the segments are held on the heap. The file must 
+	 * not be modified while the codec is in use. Other channels are read into a buffer, 
+	 * as the segments are needed again by genStego.
+	 * 
+	 * @param channel	the channel to read the JPEG from
+	 * @throws Exception
+	 */
+	public void decodeStream(ReadableByteChannel channel) throws Exception{
+		if(channel instanceof FileChannel){
+			FileChannel fileChannel = (FileChannel)channel;
+			long position = fileChannel.position();
+			decodeStream(fileChannel.map(FileChannel.MapMode.READ_ONLY, position, fileChannel.size() - position));
+			return;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(CHANNEL_READ_SIZE);
+		while(channel.read(buffer) != -1){
+			if(!buffer.hasRemaining()){
+				ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
 			}
-		}	
+		}
+		buffer.flip();
+		decodeStream(buffer);
 	}
 	
 	/**
 	 * <p>Calls the corresponding methods to handle each JPEG marker type
 	 * 
+	 * @param imageBytes	the JPEG data
+	 * @param segment		the segment to handle
 	 * @throws Exception
 	 */
-	private void handleCurrentMarker() throws Exception{
-		if(currentMarker != null){
-			if(currentMarkerType == MARKER_TYPE_DHT){
-				generateHuffmanTables(currentMarker);
-				currentMarker = null;
-				currentMarkerPos = 0;
-			}else if(currentMarkerType == MARKER_TYPE_SOF_BASELINE){
-				handleFrameData(currentMarker);
-				currentMarker = null;
-				currentMarkerPos = 0;
-			}else if(currentMarkerType == MARKER_TYPE_SOF_EXTENDED){
-				handleFrameData(currentMarker);
-				currentMarker = null;
-				currentMarkerPos = 0;
-			}else if(currentMarkerType == MARKER_TYPE_SOS){
-				handleScan(currentMarker);
-				currentMarker = null;
-				currentMarkerPos = 0;
-			}else if(currentMarkerType == MARKER_TYPE_DRI){
-				handleRestartInterval(currentMarker);
-				currentMarker = null;
-				currentMarkerPos = 0;
-			}else{
-				currentMarker = null;
-				currentMarkerPos = 0;
+	private void handleSegment(ByteBuffer imageBytes, Segment segment) throws Exception{
+		if(segment.type == MARKER_TYPE_DHT){
+			generateHuffmanTables(imageBytes, segment.getDataOffset());
+		}else if(segment.type == MARKER_TYPE_SOF_BASELINE){
+			handleFrameData(imageBytes, segment.getDataOffset());
+		}else if(segment.type == MARKER_TYPE_SOF_EXTENDED){
+			handleFrameData(imageBytes, segment.getDataOffset());
+		}else if(segment.type == MARKER_TYPE_DRI){
+			handleRestartInterval(imageBytes, segment.getDataOffset());
+		}else if(segment.type == MARKER_TYPE_SOS){
+			handleScan(imageBytes, segment.getDataOffset(), segment.getEnd());
+		}
+	}
+	
+	/**
+	 * <p>Builds an index of the marker segments of the JPEG data.
+	 * 
+	 * <p>The index moves from marker to marker using the length of each segment, only scanning 
+	 * the entropy-coded data following a SOS marker. Indexing stops at the EOI marker.
+	 * 
+	 * @param imageBytes	the JPEG data
+	 * @return				list of the segments, in the order they appear
+	 * @throws Exception	if a segment runs past the end of the array
+	 */
+	private ArrayList<Segment> indexSegments(ByteBuffer imageBytes) throws Exception{
+		ArrayList<Segment> index = new ArrayList<Segment>();
+		int i = 0;
+		while(i < imageBytes.limit()-1){
+			byte type = imageBytes.get(i+1);
+			if(imageBytes.get(i) != (byte)0xFF || type == (byte)0xFF || type == 0x00){
+				//Fill bytes, or data outside of a segment
+				i++;
+				continue;
 			}
 			
+			if(type == MARKER_TYPE_SOI || type == MARKER_TYPE_EOI || (type >= MARKER_TYPE_RST_START && type <= MARKER_TYPE_RST_END) || type == MARKER_TYPE_TEM){
+				//Markers without any data
+				index.add(new Segment(type, i, 2));
+				i += 2;
+				if(type == MARKER_TYPE_EOI){
+					break;
+				}
+				continue;
+			}
+			
+			if(i + 4 > imageBytes.limit()){
+				throw new Exception("JPEG segment truncated");
+			}
+			int markerLength = ((imageBytes.get(i+2) & 0xFF) << 8) | (imageBytes.get(i+3) & 0xFF);
+			int end = i + 2 + markerLength;
+			if(markerLength < 2 || end > imageBytes.limit()){
+				throw new Exception("JPEG segment truncated");
+			}
+			if(type == MARKER_TYPE_SOS){
+				end = findScanEnd(imageBytes, end);
+			}
+			index.add(new Segment(type, i, end - i));
+			i = end;
+		}
+		return index;
+	}
+	
+	/**
+	 * <p>Finds the end of the entropy-coded data of a scan, being the first marker
+	 * which is not a restart marker.
+	 * 
+	 * <p>The data is checked 8 bytes at a time for any 0xFF byte, only bytes within a 
+	 * matching word being checked individually.
+	 * 
+	 * @param imageBytes	the JPEG data
+	 * @param start			the index of the first byte of the entropy-coded data
+	 * @return				the index of the marker following the entropy-coded data
+	 */
+	private int findScanEnd(ByteBuffer imageBytes, int start){
+		int i = start;
+		while(i < imageBytes.limit()-1){
+			if(i + 8 <= imageBytes.limit()){
+				//A byte of the word is 0xFF if the inverted byte is 0x00
+				long word = ~imageBytes.getLong(i);
+				if(((word - 0x0101010101010101L) & ~word & 0x8080808080808080L) == 0){
+					i += 8;
+					continue;
+				}
+			}
+			if(imageBytes.get(i) == (byte)0xFF){
+				byte next = imageBytes.get(i+1);
+				if(next != 0x00 && next != (byte)0xFF && (next < MARKER_TYPE_RST_START || next > MARKER_TYPE_RST_END)){
+					return i;
+				}
+			}
+			i++;
 		}
+		return imageBytes.limit();
 	}
+	
 	/**
 	 * <p>Handles Start of Frame (SOF) markers.
 	 * 
-	 * @param tableBytes 	byte array containing the SOF marker data
+	 * @param tableBytes 	the JPEG data
+	 * @param offset		the index of the SOF marker data
 	 */
-	private void handleFrameData(byte[] tableBytes){
+	private void handleFrameData(ByteBuffer tableBytes, int offset){
 		imageComponents = new ArrayList<Component>();
-		int ctr = 0;
+		int ctr = offset;
 		
 		byte[] length = new byte[2];
-		length[0] = tableBytes[ctr];
+		length[0] = tableBytes.get(ctr);
 		ctr++;
-		length[1] = tableBytes[ctr];
+		length[1] = tableBytes.get(ctr);
 		ctr++;
 		short markerLength = (short)((length[0] << 8) | (length[1] & 0xFF));
 		
-		short samplePrecision = (short)((0x00 << 8) | (tableBytes[ctr] & 0xFF));
+		short samplePrecision = (short)((0x00 << 8) | (tableBytes.get(ctr) & 0xFF));
 		ctr++;
 		
-		length[0] = tableBytes[ctr];
+		length[0] = tableBytes.get(ctr);
 		ctr++;
-		length[1] = tableBytes[ctr];
+		length[1] = tableBytes.get(ctr);
 		ctr++;
 		short imageHeight = (short)((length[0] << 8) | (length[1] & 0xFF));
 		imageY = imageHeight;
 		
-		length[0] = tableBytes[ctr];
+		length[0] = tableBytes.get(ctr);
 		ctr++;
-		length[1] = tableBytes[ctr];
+		length[1] = tableBytes.get(ctr);
 		ctr++;
 		short imageWidth = (short)((length[0] << 8) | (length[1] & 0xFF));
 		imageX = imageWidth;
 		
-		short componentNumber = (short)((0x00 << 8) | (tableBytes[ctr] & 0xFF));
+		short componentNumber = (short)((0x00 << 8) | (tableBytes.get(ctr) & 0xFF));
 		ctr++;
 		
-		for(int i=ctr; i<markerLength; i+=3){
-			short componentID = (short)((0x00 << 8) | (tableBytes[i] & 0xFF));
+		for(int i=ctr; i<(offset+markerLength); i+=3){
+			short componentID = (short)((0x00 << 8) | (tableBytes.get(i) & 0xFF));
 			
-			short componentHorizontalFactor = (short)(0x00 << 8 | (tableBytes[i+1] & 0b11110000) >> 4);
-			short componentVerticalFactor = (short)(0x00 << 8 | (tableBytes[i+1] & 0b00001111));
+			short componentHorizontalFactor = (short)(0x00 << 8 | (tableBytes.get(i+1) & 0b11110000) >> 4);
+			short componentVerticalFactor = (short)(0x00 << 8 | (tableBytes.get(i+1) & 0b00001111));
 			
 			componentHorizontalMax = Math.max(componentHorizontalMax, componentHorizontalFactor);
 			componentVerticalMax = Math.max(componentVerticalMax, componentVerticalFactor);
 			
-			short quantizationTableID = (short)((0x00 << 8) | (tableBytes[i+2] & 0xFF));
+			short quantizationTableID = (short)((0x00 << 8) | (tableBytes.get(i+2) & 0xFF));
 			
 			if(componentNumber == 1){
 				imageComponents.add(new Component(Component.SCAN_TYPE_NONINTERLEAVED, componentID, componentHorizontalFactor, componentVerticalFactor, quantizationTableID));
@@ -276,98 +317,187 @@ public class JPEGCodec implements Codec{
 	
 	/**
 	 * <p>Handles restart interval (DRI) markers
-	 * @param tableBytes
+	 * 
+	 * @param tableBytes	the JPEG data
+	 * @param offset		the index of the DRI marker data
 	 */
-	private void handleRestartInterval(byte[] tableBytes){
-		restartInterval = (short)(((tableBytes[2] & 0xFF) << 8) | (tableBytes[3] & 0xFF));
+	private void handleRestartInterval(ByteBuffer tableBytes, int offset){
+		restartInterval = ((tableBytes.get(offset+2) & 0xFF) << 8) | (tableBytes.get(offset+3) & 0xFF);
+	}
+	
+	/**
+	 * <p>Sets whether scans with restart intervals are decoded in parallel, each interval 
+	 * being independent of the others. Enabled by default.
+	 * 
+	 * @param parallelDecoding	boolean value specifying if parallel decoding is used
+	 */
+	public void setParallelDecoding(boolean parallelDecoding){
+		this.parallelDecoding = parallelDecoding;
 	}
 	
 	/**
 	 * <p>Handles the decompression of the scan data from a SOS marker.
 	 * 
-	 * <p>The method takes the compressed data, in byte array form, and reads it
-	 * to contruct a list of the JPEG MCU's containing the quanitised DCT values
-	 * for each color components.
+	 * <p>When the scan has restart intervals, and parallel decoding is enabled, the restart 
+	 * markers are located first and the intervals decoded on the fork/join pool. Otherwise 
+	 * the scan is decoded serially.
 	 * 
-	 * @param tableBytes	the byte array contaning the compressed scan data
-	 * @param mcuCount		the amount of MCU's the JPEG file contains
+	 * @param tableBytes	the JPEG data
+	 * @param start			the index of the first byte of the compressed scan data
+	 * @param end			the index after the last byte of the compressed scan data
 	 * @throws Exception
 	 */
-	private void decompressScanData(byte[] tableBytes, int mcuCount) throws Exception{
-		//Convert the byte array to a String
-		getSymbolByteString = Utils.byteArrayToString(tableBytes);
+	private void decompressScanData(ByteBuffer tableBytes, int start, int end) throws Exception{
+		int mcuCount = coefficients.getMCUCount();
+		int intervalCount = (restartInterval > 0) ? (mcuCount + restartInterval - 1) / restartInterval : 1;
+		int minimumIntervals = Math.max(1, PARALLEL_MIN_MCUS / Math.max(1, restartInterval));
 		
+		//Positions of each restart interval and MCU, used to copy unchanged data when encoding
+		mcuBitEnds = new long[mcuCount];
+		scanIntervalStarts = new int[intervalCount];
+		scanIntervalEnds = new int[intervalCount];
+		scanIntervalStarts[0] = start;
+		scanPositionsValid = true;
 		
+		if(parallelDecoding && intervalCount > minimumIntervals){
+			int[] markers = findRestartMarkers(tableBytes, start, end);
+			if(markers.length == intervalCount - 1){
+				int[] intervalStarts = new int[intervalCount];
+				int[] intervalEnds = new int[intervalCount];
+				for(int i=0; i<intervalCount; i++){
+					intervalStarts[i] = (i == 0) ? start : markers[i-1] + 2;
+					intervalEnds[i] = (i == markers.length) ? end : markers[i];
+				}
+				try{
+					ForkJoinPool.commonPool().invoke(new ScanDecodeTask(this, tableBytes, intervalStarts, intervalEnds, 0, intervalCount, minimumIntervals));
+				}catch(ScanDecodeTask.ScanDecodeException e){
+					throw (Exception)e.getCause();
+				}
+				scanIntervalEnds = intervalEnds;
+				return;
+			}
+			//Restart markers missing or corrupt, leave the serial decoder to handle them
+		}
+		decompressMCUs(new ScanReader(tableBytes, start, end), 0, mcuCount);
+		for(int i=0; i<intervalCount; i++){
+			scanIntervalEnds[i] = (i == intervalCount - 1) ? end : scanIntervalStarts[i+1] - 2;
+		}
+	}
+	
+	/**
+	 * <p>Decodes a range of restart intervals, used by the parallel decoder.
+	 * 
+	 * @param tableBytes		the JPEG data
+	 * @param intervalStarts	the index of the first byte of each restart interval
+	 * @param intervalEnds		the index after the last byte of each restart interval
+	 * @param firstInterval		the first interval to decode
+	 * @param lastInterval		the interval after the last interval to decode
+	 * @throws Exception
+	 */
+	void decodeIntervals(ByteBuffer tableBytes, int[] intervalStarts, int[] intervalEnds, int firstInterval, int lastInterval) throws Exception{
+		ScanReader reader = new ScanReader(tableBytes, intervalStarts[firstInterval], intervalEnds[lastInterval-1]);
+		int lastMCU = Math.min(lastInterval * restartInterval, coefficients.getMCUCount());
+		decompressMCUs(reader, firstInterval * restartInterval, lastMCU);
+	}
+	
+	/**
+	 * <p>Finds the restart (RSTn) markers within the compressed scan data.
+	 * 
+	 * @param tableBytes	the JPEG data
+	 * @param start			the index of the first byte of the compressed scan data
+	 * @param end			the index after the last byte of the compressed scan data
+	 * @return				array containing the index of each restart marker
+	 */
+	private int[] findRestartMarkers(ByteBuffer tableBytes, int start, int end){
+		int[] markers = new int[16];
+		int markerCount = 0;
+		for(int i=start; i<end-1; i++){
+			if(tableBytes.get(i) == (byte)0xFF){
+				byte next = tableBytes.get(i+1);
+				if(next >= MARKER_TYPE_RST_START && next <= MARKER_TYPE_RST_END){
+					if(markerCount == markers.length){
+						markers = Arrays.copyOf(markers, markers.length * 2);
+					}
+					markers[markerCount] = i;
+					markerCount++;
+				}
+				i++;
+			}
+		}
+		return Arrays.copyOf(markers, markerCount);
+	}
+	
+	/**
+	 * <p>Decodes a range of MCU's from the scan data.
+	 * 
+	 * <p>The method reads the compressed data, via a ScanReader, filling the coefficient store 
+	 * with the quanitised DCT values for each color component of each MCU.
+	 * 
+	 * @param reader		the ScanReader positioned at the start of the first MCU
+	 * @param firstMCU		the index of the first MCU to decode
+	 * @param lastMCU		the index after the last MCU to decode
+	 * @throws Exception
+	 */
+	private void decompressMCUs(ScanReader reader, int firstMCU, int lastMCU) throws Exception{
 		int lastDC = 0;
-		//Create the requied amount of MCUs
-		for(int mcu=0; mcu<mcuCount; mcu++){
-			//Create MCU object
-			MCU currentMCU = new MCU();
-			for(Component c: imageComponents){
+		for(int mcu=firstMCU; mcu<lastMCU; mcu++){
+			if(restartInterval > 0 && mcu > firstMCU && (mcu % restartInterval) == 0){
+				//Restart interval boundary, the remaining bits of the byte are padding
+				if(!reader.restart()){
+					scanPositionsValid = false;
+				}
+			}
+			if(restartInterval > 0 && (mcu % restartInterval) == 0){
+				scanIntervalStarts[mcu / restartInterval] = reader.getPosition();
+			}
+			
+			for(int c=0; c<imageComponents.size(); c++){
+				Component component = imageComponents.get(c);
+				Huffman dcTable = huffmanTablesDC.get(component.dcTableID);
+				Huffman acTable = huffmanTablesAC.get(component.acTableID);
+				short[] values = coefficients.getComponentData(c);
 				lastDC = 0;
-				for(int i=0; i<c.componentVerticalFactor; i++){
-					for(int j=0; j<c.componentHorizontalFactor; j++){				
-						//Create dataUnit
-						DataUnit dataUnit = new DataUnit();
-						
-						//Get DC
-						//Get huffman encoded value
-						byte huffmanSymbol = getSymbol(0, c.dcTableID);
-						
-						int dcValue;
-						
-						if(huffmanSymbol != 0){
-							//Read unencoded bits of length huffman encoded value
-							int readValue = Integer.parseInt(getSymbolByteString.substring(0, (int)huffmanSymbol), 2);
-							getSymbolByteString = getSymbolByteString.substring(huffmanSymbol);
-							
-							//Calculate the difference
-							int difference = extend(readValue, huffmanSymbol);
-							
-							//Calculate the DC value, and update the lastDC value
-							dcValue = lastDC + difference;
-							lastDC = dcValue;
-						}else{
-							//No extra bits for DC value
-							dcValue = lastDC;
-						}
+				int blocks = component.componentVerticalFactor * component.componentHorizontalFactor;
+				for(int block=0; block<blocks; block++){
+					int offset = coefficients.getBlockOffset(c, mcu, block);
+					
+					//Get DC
+					//Get huffman encoded value
+					byte huffmanSymbol = getSymbol(reader, dcTable);
+					
+					if(huffmanSymbol != 0){
+						//Read unencoded bits of length huffman encoded value
+						int readValue = reader.getBits(huffmanSymbol);
 						
-						dataUnit.dcValue = dcValue;
+						//Calculate the DC value, and update the lastDC value
+						lastDC = lastDC + extend(readValue, huffmanSymbol);
+					}
+					values[offset] = (short)lastDC;
+					
+					//Get the AC values, the store is zeroed so runs of zeros are skipped over
+					int acCtr = 0;
+					while(acCtr < 63){
+						huffmanSymbol = getSymbol(reader, acTable);
+						int acZeroRun = (huffmanSymbol & 0b11110000) >> 4;
+						byte acMagValue = (byte)(huffmanSymbol & 0b00001111);
 						
-						int processedACValues = 0;
-						while(processedACValues < 63){
-							huffmanSymbol = getSymbol(1, c.acTableID);
-							short acZeroRun = (short)(0x00 << 8 | (huffmanSymbol & 0b11110000) >> 4);
-							byte acMagValue = (byte)(huffmanSymbol & 0b00001111);
-							
-							if(acMagValue != 0){
-								int readValue = Integer.parseInt(getSymbolByteString.substring(0, (int)acMagValue), 2);
-								getSymbolByteString = getSymbolByteString.substring(acMagValue);
-								
-								//Calculate the AC coefficient
-								int acCoefficient = extend(readValue, acMagValue);
-								
-								//Set the zero run
-								dataUnit.setZeroRun(acZeroRun);
-								processedACValues += acZeroRun;
-								//Set the AC value
-								dataUnit.setCurrentAC(acCoefficient);
-								processedACValues += 1;
-							}else{
-								if(acZeroRun == 0b1111){
-									dataUnit.setZeroRun(16);
-									processedACValues += 16;
-								}else if(acZeroRun == 0b0000){
-									dataUnit.setZeroRun((63 - processedACValues));
-									processedACValues += (63 - processedACValues);
-								}
+						if(acMagValue != 0){
+							int readValue = reader.getBits(acMagValue);
+							acCtr += acZeroRun;
+							if(acCtr >= 63){
+								throw new Exception("AC values exceed the DataUnit");
 							}
+							values[offset + 1 + acCtr] = (short)extend(readValue, acMagValue);
+							acCtr++;
+						}else if(acZeroRun == 0b1111){
+							acCtr += 16;
+						}else if(acZeroRun == 0b0000){
+							acCtr = 63;
 						}
-						currentMCU.addDataUnit(dataUnit);
 					}
 				}
 			}
-			mcuList.add(currentMCU);
+			mcuBitEnds[mcu] = reader.getBitPosition();
 		}
 	}
 	
@@ -390,64 +520,51 @@ public class JPEGCodec implements Codec{
 		}
 	}
 	
-	private int magnitude;
-	private int additional;
 	/**
-	 * <p>Does the opposite of the extend function, converting a coefficient value to
-	 * a magnitude value and additional bits value.
+	 * <p>Does the opposite of the extend function, getting the magnitude value of a coefficient.
 	 * 
 	 * <p>Source: Based upon the algorithm 8.2 from 'Compressed Image File Formats JPEG, PNG, GIF, XBM, BMP' John Miano
 	 * 
 	 * @param value 	coefficient value to be converted
+	 * @return			the magnitude (amount of additional bits) of the value
 	 */
-	private void reverseExtend(int value){
-		if(value>=0){
-			additional = (byte) value;
-		}else{
+	private static int reverseExtendMagnitude(int value){
+		if(value < 0){
 			value = -value;
-			additional = (byte) ~value;
 		}
-		magnitude = 0;
-		while(value != 0){
-			value = value>>1;
-			magnitude++;
+		return 32 - Integer.numberOfLeadingZeros(value);
+	}
+	
+	/**
+	 * <p>Does the opposite of the extend function, getting the additional bits of a coefficient.
+	 * 
+	 * @param value 		coefficient value to be converted
+	 * @param magnitude		the magnitude of the value
+	 * @return				the additional bits, rightmost aligned
+	 */
+	private static int reverseExtendAdditional(int value, int magnitude){
+		if(value < 0){
+			value = value - 1;
 		}
+		return value & ((1 << magnitude) - 1);
 	}
 	
-	private String getSymbolByteString = "";
 	/**
-	 * <p>Gets the next Huffman Coded value from the 'getSymbolByteString' string, based upon
+	 * <p>Gets the next Huffman Coded value from the scan data, based upon
 	 * the Huffman table specified.
 	 * 
-	 * 
-	 * @param tableClass	the class of the Huffman Table (0 = DC, 1 = AC)
-	 * @param tableID		the id of the Huffman Table
-	 * @return				the next symbol present in the string.
+	 * @param reader		the ScanReader to read the scan data from
+	 * @param huffmanTable	the Huffman Table the value is coded with
+	 * @return				the next symbol present in the scan data.
 	 * @throws Exception
 	 */
-	private byte getSymbol(int tableClass, int tableID) throws Exception{
-		Huffman huffmanTable = null;
-		
-		
-		if(tableClass == 0){
-			huffmanTable = huffmanTablesDC.get(tableID);
-		}else if(tableClass == 1){
-			huffmanTable = huffmanTablesAC.get(tableID);
-		}
-			
-		for(int i=0; i<16; i++){
-			String currentCode = getSymbolByteString.substring(0, i+1);
-			try{
-				byte symbol = huffmanTable.getSymbol(currentCode);
-				getSymbolByteString = getSymbolByteString.substring(i+1);
-				return symbol; 
-			}catch(Exception e){
-				if(i==15){
-					throw new Exception("Symbol not present for given code");
-				}
-			}
+	private byte getSymbol(ScanReader reader, Huffman huffmanTable) throws Exception{
+		int decoded = huffmanTable.decode(reader.peekBits(16));
+		if(decoded == -1){
+			throw new Exception("Symbol not present for given code");
 		}
-		return (byte) 0xFF;
+		reader.skipBits(decoded >> 8);
+		return (byte)decoded;
 	}
 	
 	/**
@@ -458,15 +575,33 @@ public class JPEGCodec implements Codec{
 	 * @return				an integer value containing the maximum capacity supported
 	 */
 	public int embedCapacity(int acForMessage){
-		int capacity = 0;
-		for(MCU currentMCU: mcuList){
-			capacity += (currentMCU.data.size() * acForMessage);
-		}
+		int capacity = scanBlockCount * acForMessage;
 		capacity = (capacity-acForMessage) / 8;
 		capacity = capacity - 4;
 		return capacity;
 	}
 	
+	/**
+	 * <p>Gets the amount of MCU's in the decoded scan.
+	 * 
+	 * @return	the amount of MCU's
+	 */
+	public int getMCUCount(){
+		return scanMCUCount;
+	}
+	
+	/**
+	 * <p>Gets a copy of the coefficients of a MCU, as a view over the coefficient store.
+	 * 
+	 * @param index	the index of the MCU
+	 * @return		the MCU containing the DataUnits of each component
+	 * @throws Exception
+	 */
+	public MCU getMCU(int index) throws Exception{
+		ensureDecoded();
+		return coefficients.getMCU(index);
+	}
+	
 	public static final int JPEG_AC_EMBED_OFFSET = 8;
 	/**
 	 * {@inheritDoc}
@@ -474,6 +609,12 @@ public class JPEGCodec implements Codec{
 	 * <p> Provides embedding of a message in the current JPEG structure.
 	 */
   	public void encode_msg(byte[] message, String passwordKey, int acForMessage) throws MessageTooLargeException{
+  		try{
+  			ensureDecoded();
+  		}catch(Exception e){
+  			throw new IllegalStateException("Unable to decode the JPEG scan data", e);
+  		}
+  		
   		byte[] messageLength = Utils.intToByteArray(message.length);
   		byte acMessage = (byte)acForMessage;
   		byte[] embedData = Utils.joinByteArray(messageLength, message);
@@ -483,47 +624,42 @@ public class JPEGCodec implements Codec{
   		int ctr = 0;
 		int bytePos = 0;
 		if(acForMessage > 0 && acForMessage < (63-JPEG_AC_EMBED_OFFSET)){
-  			for(MCU currentMCU: mcuList){
-  				for(DataUnit dU: currentMCU.data){
-  					if(ctr == embedData.length){
-  						break;
-  					}
-  					if(acMessageSet){
-  						byte currentMessageByte;
-  	  					byte curBit;
-  	  					int offset = 63 - (JPEG_AC_EMBED_OFFSET  + acMessage);
-  	  					for(int i=offset; i<(offset+acMessage); i++){
-  	  						if((bytePos!=0) && (bytePos%8==0)){
-  	  							ctr++;
-  	  							if(ctr == embedData.length){
-	  								break;
-	  							}
-  	  						}
-  	  						currentMessageByte = embedData[ctr];
-  	  						curBit = (byte)((currentMessageByte >> (7-(bytePos%8))) & 0b00000001);
-  	  						if(curBit == 0b00000001){
-  	  							//Bit: 1
-  	  							dU.acValues[JPEG_AC_EMBED_OFFSET+i] = 1;
-  	  						}else{
-  	  							//Bit: 0
-  	  							dU.acValues[JPEG_AC_EMBED_OFFSET+i] = 0;
-  	  						}
-  	  						bytePos++;
-  	  					}
-  					}else{
-  						for(int i=0; i<8; i++){
-  	  						byte curBit = (byte)(acMessage >> (7-(i%8)) & 0b00000001);
-  	  						if(curBit == 0b00000001){
-  	  							//Bit: 1
-  	  							dU.acValues[JPEG_AC_EMBED_OFFSET+i] = 1;
-  	  						}else{
-  	  							//Bit: 0
-  	  							dU.acValues[JPEG_AC_EMBED_OFFSET+i] = 0;
-  	  						}
-  	  					}
-  						acMessageSet = true;
-  					}
+  			int units = coefficients.getBlockCount();
+  			int lastUnit = -1;
+  			for(int unit=0; unit<units; unit++){
+  				short[] values = coefficients.getComponentData(coefficients.getUnitComponent(unit));
+  				//Index of the first AC value of the block
+  				int acStart = coefficients.getUnitOffset(unit) + 1;
+  				if(ctr == embedData.length){
+  					break;
   				}
+  				lastUnit = unit;
+  				if(acMessageSet){
+  					byte currentMessageByte;
+    					byte curBit;
+    					int offset = 63 - (JPEG_AC_EMBED_OFFSET  + acMessage);
+    					for(int i=offset; i<(offset+acMessage); i++){
+    						if((bytePos!=0) && (bytePos%8==0)){
+    							ctr++;
+    							if(ctr == embedData.length){
+  								break;
+  							}
+    						}
+    						currentMessageByte = embedData[ctr];
+    						curBit = (byte)((currentMessageByte >> (7-(bytePos%8))) & 0b00000001);
+    						values[acStart+JPEG_AC_EMBED_OFFSET+i] = curBit;
+    						bytePos++;
+    					}
+  				}else{
+  					for(int i=0; i<8; i++){
+    						byte curBit = (byte)(acMessage >> (7-(i%8)) & 0b00000001);
+    						values[acStart+JPEG_AC_EMBED_OFFSET+i] = curBit;
+    					}
+  					acMessageSet = true;
+  				}
+  			}
+  			if(lastUnit != -1){
+  				markChangedMCUs(0, (lastUnit / coefficients.getBlocksPerMCU()) + 1);
   			}
   		}
 		if(ctr != embedData.length){
@@ -537,6 +673,8 @@ public class JPEGCodec implements Codec{
 	 * <p> Provides recovery of a message from the current JPEG structure.
 	 */
   	public byte[] decode_msg(String passwordKey) throws MessageTooLargeException, Exception{
+  		ensureDecoded();
+  		
   		//Byte for getting the AC degradation value
   		byte acMessage = (byte)0x00;
   		boolean acMessageFound = false;
@@ -550,46 +688,48 @@ public class JPEGCodec implements Codec{
 		int bytePos = 0;
 		byte currentByte = (byte)0x00;
 		int capacity = 0;
-		for(MCU currentMCU: mcuList){
-			for(DataUnit dU: currentMCU.data){
-				if(acMessageFound){
-					//If the AC degradation value has been recovered
-					int offset = 63 - (JPEG_AC_EMBED_OFFSET  + acMessage);
-	  				for(int i=offset; i<(offset+acMessage); i++){
-  						if((bytePos!=0) && (bytePos%8==0)){
-  							if(ctr == capacity){
-  								break;
-  							}
-  							recoveredData[ctr] = currentByte;
-  							ctr++;
-  							currentByte = (byte)0x00;
-  						}
-  						
-  						if(dU.acValues[JPEG_AC_EMBED_OFFSET+i] == 1){
-  							currentByte = (byte)(currentByte << 1);
-  							currentByte = (byte) (currentByte | 0b00000001);
-  						}else if(dU.acValues[JPEG_AC_EMBED_OFFSET+i] == 0){
-  							currentByte = (byte)(currentByte << 1);
-  							currentByte = (byte) (currentByte | 0b00000000);
+		int units = coefficients.getBlockCount();
+		for(int unit=0; unit<units; unit++){
+			short[] values = coefficients.getComponentData(coefficients.getUnitComponent(unit));
+			//Index of the first AC value of the block
+			int acStart = coefficients.getUnitOffset(unit) + 1;
+			if(acMessageFound){
+				//If the AC degradation value has been recovered
+				int offset = 63 - (JPEG_AC_EMBED_OFFSET  + acMessage);
+  				for(int i=offset; i<(offset+acMessage); i++){
+  					if((bytePos!=0) && (bytePos%8==0)){
+  						if(ctr == capacity){
+  							break;
   						}
-  						bytePos++;
-  					}					
-				}else{
-					//if the AC degradation value needs to be recovered
-					for(int i=0; i<8; i++){
-						if(dU.acValues[JPEG_AC_EMBED_OFFSET+i] == 1){
-							acMessage = (byte)(acMessage << 1);
-							acMessage = (byte) (acMessage | 0b00000001);
-						}else if(dU.acValues[JPEG_AC_EMBED_OFFSET+i] == 0){
-							acMessage = (byte)(acMessage << 1);
-							acMessage = (byte) (acMessage | 0b00000000);
-						}
+  						recoveredData[ctr] = currentByte;
+  						ctr++;
+  						currentByte = (byte)0x00;
   					}
-					acMessageFound = true;
-					capacity = embedCapacity(acMessage)+4;
-					recoveredData = new byte[capacity];
-				}		
-			}
+  					
+  					if(values[acStart+JPEG_AC_EMBED_OFFSET+i] == 1){
+  						currentByte = (byte)(currentByte << 1);
+  						currentByte = (byte) (currentByte | 0b00000001);
+  					}else if(values[acStart+JPEG_AC_EMBED_OFFSET+i] == 0){
+  						currentByte = (byte)(currentByte << 1);
+  						currentByte = (byte) (currentByte | 0b00000000);
+  					}
+  					bytePos++;
+  				}					
+			}else{
+				//if the AC degradation value needs to be recovered
+				for(int i=0; i<8; i++){
+					if(values[acStart+JPEG_AC_EMBED_OFFSET+i] == 1){
+						acMessage = (byte)(acMessage << 1);
+						acMessage = (byte) (acMessage | 0b00000001);
+					}else if(values[acStart+JPEG_AC_EMBED_OFFSET+i] == 0){
+						acMessage = (byte)(acMessage << 1);
+						acMessage = (byte) (acMessage | 0b00000000);
+					}
+  				}
+				acMessageFound = true;
+				capacity = embedCapacity(acMessage)+4;
+				recoveredData = new byte[capacity];
+			}		
 		}
 		
 		//Get the message length from the recovered data
@@ -613,198 +753,491 @@ public class JPEGCodec implements Codec{
 	}
 	
   	/**
-  	 * <p>Generates a string representation of the scan data of the JPEG structure.
+  	 * <p>Records that the coefficients of a range of MCU's have been changed.
+  	 * 
+  	 * @param firstMCU	the index of the first changed MCU
+  	 * @param lastMCU	the index after the last changed MCU
+  	 */
+  	private void markChangedMCUs(int firstMCU, int lastMCU){
+  		changedFirstMCU = Math.min(changedFirstMCU, firstMCU);
+  		changedLastMCU = Math.max(changedLastMCU, lastMCU);
+  	}
+  	
+  	/**
+  	 * <p>Sets whether only the changed MCU's of the scan are encoded, the data of the 
+  	 * others being copied from the original JPEG. Enabled by default, the whole scan 
+  	 * is still encoded if the restart interval of the output differs.
+  	 * 
+  	 * @param incrementalEncoding	boolean value specifying if incremental encoding is used
+  	 */
+  	public void setIncrementalEncoding(boolean incrementalEncoding){
+  		this.incrementalEncoding = incrementalEncoding;
+  	}
+  	
+  	/**
+  	 * <p>Sets whether the scan is encoded in parallel, each restart interval of the output 
+  	 * being encoded on its own. Enabled by default.
+  	 * 
+  	 * @param parallelEncoding	boolean value specifying if parallel encoding is used
+  	 */
+  	public void setParallelEncoding(boolean parallelEncoding){
+  		this.parallelEncoding = parallelEncoding;
+  	}
+  	
+  	/**
+  	 * <p>Sets whether the Huffman tables of the generated JPEG are replaced by optimal tables 
+  	 * for the scan being encoded. Disabled by default, the tables of the cover image being kept 
+  	 * with any missing symbols added to them.
+  	 * 
+  	 * <p>Optimal tables give a smaller file and cannot run out of space for symbols, but the 
+  	 * whole scan must be encoded, so incremental encoding is not used.
+  	 * 
+  	 * @param optimisedHuffmanTables	boolean value specifying if optimal tables are generated
+  	 */
+  	public void setOptimisedHuffmanTables(boolean optimisedHuffmanTables){
+  		this.optimisedHuffmanTables = optimisedHuffmanTables;
+  	}
+  	
+  	/**
+  	 * <p>Sets the restart interval, in MCU's, of the generated JPEG. {@link #RESTART_INTERVAL_COVER} 
+  	 * keeps the interval of the cover image, 0 writes no restart markers.
+  	 * 
+  	 * @param interval	the restart interval to use
+  	 */
+  	public void setOutputRestartInterval(int interval){
+  		if(interval < RESTART_INTERVAL_COVER || interval > 0xFFFF){
+  			throw new IllegalArgumentException("Invalid restart interval: " + interval);
+  		}
+  		this.outputRestartInterval = interval;
+  	}
+  	
+  	/**
+  	 * <p>Gets the restart interval, in MCU's, used for the generated JPEG.
+  	 * 
+  	 * @return	the restart interval, 0 if restart markers are not used
+  	 */
+  	private int getOutputRestartInterval(){
+  		if(outputRestartInterval == RESTART_INTERVAL_COVER){
+  			return restartInterval;
+  		}
+  		return outputRestartInterval;
+  	}
+  	
+  	/**
+  	 * <p>Generates the compressed scan data of the JPEG structure.
+  	 * 
+  	 * <p>The scan is split at the restart intervals of the output, groups of intervals being 
+  	 * encoded into their own buffers (in parallel if enabled) and joined with RSTn markers.
+  	 * 
+  	 * <p>Symbols missing from the Huffman tables are added if there is space for them, in the 
+  	 * order they appear in the scan, and the intervals containing them encoded again. If 
+  	 * optimised tables are enabled, the tables are instead generated from the scan first.
+  	 * 
+  	 * @return	a byte array containing the compressed scan data of the JPEG structure.
+  	 * @throws Exception	if a symbol is not present and there is no space to add it
+  	 */
+  	private byte[] encodeScan() throws Exception{
+  		if(!optimisedHuffmanTables && incrementalEncoding && scanPositionsValid && getOutputRestartInterval() == restartInterval){
+  			return encodeChangedScan();
+  		}
+  		
+  		int mcuCount = coefficients.getMCUCount();
+  		int interval = getOutputRestartInterval();
+  		
+  		//Group the restart intervals, so each group has a reasonable amount of work
+  		int groupSize = mcuCount;
+  		if(interval > 0){
+  			groupSize = interval * Math.max(1, PARALLEL_MIN_MCUS / interval);
+  		}
+  		int groupCount = Math.max(1, (mcuCount + groupSize - 1) / groupSize);
+  		ScanInterval[] intervals = new ScanInterval[groupCount];
+  		for(int i=0; i<groupCount; i++){
+  			intervals[i] = new ScanInterval(i * groupSize, Math.min((i + 1) * groupSize, mcuCount));
+  		}
+  		
+  		int[] dcOffsets = null;
+  		if(interval != restartInterval){
+  			dcOffsets = calculateDCOffsets(interval);
+  		}
+  		
+  		if(optimisedHuffmanTables){
+  			optimiseHuffmanTables(dcOffsets);
+  			//The original scan data no longer matches the tables, so can't be copied
+  			scanPositionsValid = false;
+  		}
+  		
+  		encodeIntervals(intervals, dcOffsets);
+  		
+  		//Add any missing symbols, in scan order, then encode the affected intervals again
+  		boolean symbolsAdded = false;
+  		for(ScanInterval scanInterval: intervals){
+  			if(scanInterval.hasMissingSymbols()){
+  				addMissingSymbols(scanInterval);
+  				symbolsAdded = true;
+  			}
+  		}
+  		if(symbolsAdded){
+  			encodeIntervals(intervals, dcOffsets);
+  		}
+  		
+  		//Join the intervals with restart markers
+  		int totalLength = (groupCount - 1) * 2;
+  		for(ScanInterval scanInterval: intervals){
+  			totalLength += scanInterval.data.length;
+  		}
+  		
+  		byte[] scanData = new byte[totalLength];
+  		int position = 0;
+  		for(ScanInterval scanInterval: intervals){
+  			if(scanInterval.firstMCU > 0){
+  				scanData[position] = (byte)0xFF;
+  				scanData[position+1] = (byte)(MARKER_TYPE_RST_START + (((scanInterval.firstMCU / interval) - 1) & 0b111));
+  				position += 2;
+  			}
+  			System.arraycopy(scanInterval.data, 0, scanData, position, scanInterval.data.length);
+  			position += scanInterval.data.length;
+  		}
+  		return scanData;
+  	}
+  	
+  	/**
+  	 * <p>Generates the compressed scan data, encoding only the changed MCU's.
   	 * 
-  	 * @return	a string containing the compressed scan data of the JPEG structure.
+  	 * <p>Restart intervals without changes are copied from the original JPEG as they are. 
+  	 * Within the interval containing changes, the bits before and after the changed MCU's 
+  	 * are copied from the original scan, using the positions recorded when decoding. The 
+  	 * codes of existing symbols are kept when symbols are added to the Huffman tables, so 
+  	 * the copied data remains valid.
+  	 * 
+  	 * @return	a byte array containing the compressed scan data of the JPEG structure.
+  	 * @throws Exception	if a symbol is not present and there is no space to add it
+  	 */
+  	private byte[] encodeChangedScan() throws Exception{
+  		ScanInterval changed = new ScanInterval(Math.min(changedFirstMCU, changedLastMCU), changedLastMCU);
+  		byte[] scanData = writeChangedScan(changed);
+  		if(changed.hasMissingSymbols()){
+  			addMissingSymbols(changed);
+  			scanData = writeChangedScan(changed);
+  		}
+  		return scanData;
+  	}
+  	
+  	/**
+  	 * <p>Writes the compressed scan data, copying the unchanged data from the original JPEG.
+  	 * 
+  	 * @param changed	the ScanInterval holding the range of changed MCU's
+  	 * @return			a byte array containing the compressed scan data
   	 * @throws Exception
   	 */
-  	private String encodeScan() throws Exception{
-  		String scanString = "";
+  	private byte[] writeChangedScan(ScanInterval changed) throws Exception{
+  		int mcuCount = coefficients.getMCUCount();
+  		int intervalLength = (restartInterval > 0) ? restartInterval : mcuCount;
+  		ScanWriter writer = new ScanWriter(scanDataLength + 16);
   		
-  		//Iterate through each MCU
-  		for(MCU currentMCU: mcuList){
-  			int dataUnitCtr = 0;
+  		for(int i=0; i<scanIntervalStarts.length; i++){
+  			if(i > 0){
+  				writer.writeRestartMarker(i - 1);
+  			}
+  			int firstMCU = i * intervalLength;
+  			int lastMCU = Math.min(firstMCU + intervalLength, mcuCount);
+  			int changedFirst = Math.max(firstMCU, changed.firstMCU);
+  			int changedLast = Math.min(lastMCU, changed.lastMCU);
   			
-  			//Iterate though each of the components
-  			for(Component c: imageComponents){
-  				int lastDC = 0;
-  				for(int i=0; i<c.componentVerticalFactor; i++){
-  					for(int j=0; j<c.componentHorizontalFactor; j++){
-  						DataUnit currentDataUnit = currentMCU.data.get(dataUnitCtr);
-  						
-  						//Get the correct HuffmanTables for the current AC and DC values
-  						int currentDCTableID = c.dcTableID;
-  						int currentACTableID = c.acTableID;
-  						Huffman dcTable = this.huffmanTablesDC.get(currentDCTableID);
-  						Huffman acTable = this.huffmanTablesAC.get(currentACTableID);
-  						
-  						//Write the DC value to the string
-  						int dcDifference = currentDataUnit.dcValue - lastDC;
-  						lastDC = currentDataUnit.dcValue;
-  						
-  						reverseExtend(dcDifference);
-  						
-  						String dcMag = "";
-  						String magString = "";
-  						if(magnitude > 0){
-  							String intString = Integer.toBinaryString((additional));
-  							if(intString.length() < (magnitude-1)){
-  								for(int x=intString.length();x<(magnitude-1);x++){
-  									intString = "0" + intString;
-   								}
-  							}
-  							if(dcDifference >= 0){
-  								magString = 1 + intString.substring((intString.length()-(magnitude-1)));
-  							}else{
-  								magString = 0 + intString.substring((intString.length()-(magnitude-1)));
-  							}
-  						}
-						try{
-							dcMag = this.getHuffmanCode(0, currentDCTableID, (byte)magnitude);
-							scanString = scanString + dcMag;
-							if(magnitude > 0){
-								scanString = scanString + magString;
-							}
-						}catch(Exception e){
-							if(dcTable.checkSpace()){
-								dcMag = dcTable.addNewSymbol((byte)magnitude);
-								scanString = scanString + dcMag;
-								if(magnitude > 0){
-									scanString = scanString + magString;
-								}
-							}
-						}
-
-						//Write the AC values to the string
-  						byte zeroRun = 0;
-  						int[] acValues = currentDataUnit.acValues;
-  						for(int acCtr=0; acCtr<acValues.length; acCtr++){
-  							if(acValues[acCtr] != 0){
-  								while(zeroRun >= 16){
-  									try{
-  										scanString = scanString + this.getHuffmanCode(1, currentACTableID, (byte)0xF0);
-  									}catch(Exception e){
-  										if(acTable.checkSpace()){
-  											scanString = scanString + acTable.addNewSymbol((byte)0xF0);
-  										}
-  									}
-  									zeroRun -= 16;
-  								}
-  								reverseExtend(acValues[acCtr]);
-								String addString = "";
-		  						if(magnitude > 0){
-		  							String intString = Integer.toBinaryString((additional));
-		  							if(intString.length() < (magnitude-1)){
-		  								for(int x=intString.length();x<(magnitude-1);x++){
-		  									intString = "0" + intString;
-		   								}
-		  							}  							
-		  							if(acValues[acCtr] >= 0){
-		  								addString = 1 + intString.substring((intString.length()-(magnitude-1)));
-		  							}else{
-		  								addString = 0 + intString.substring((intString.length()-(magnitude-1)));
-		  							}
-		  						}
-		  						byte acCode = ((byte)(((zeroRun << 4) | magnitude) & 0xFF));
-  								try{
-  									scanString = scanString + this.getHuffmanCode(1, currentACTableID, acCode);
-  									scanString = scanString + addString;
-  								}catch(Exception e){
-  									if(acTable.checkSpace()){
-  										scanString = scanString + acTable.addNewSymbol(acCode);
-  										scanString = scanString + addString;
-  									}
-  								}
-  								zeroRun=0;
-  							}else{
-  								zeroRun++;
+  			if(changedFirst >= changedLast){
+  				//No changes, copy the coded data of the interval
+  				writer.writeCodedBytes(originalData, scanIntervalStarts[i], scanIntervalEnds[i] - scanIntervalStarts[i]);
+  			}else{
+  				ScanReader reader = new ScanReader(originalData, scanIntervalStarts[i], scanIntervalEnds[i]);
+  				long changedStart = (changedFirst == firstMCU) ? 0 : mcuBitEnds[changedFirst - 1];
+  				long changedEnd = mcuBitEnds[changedLast - 1];
+  				
+  				writer.copyBits(reader, changedStart);
+  				encodeMCUs(writer, changedFirst, changedLast, null, changed);
+  				reader.skip(changedEnd - changedStart);
+  				writer.copyBits(reader, mcuBitEnds[lastMCU - 1] - changedEnd);
+  			}
+  		}
+  		return writer.toByteArray();
+  	}
+  	
+  	/**
+  	 * <p>Adds the symbols recorded as missing in a ScanInterval to the Huffman tables.
+  	 * 
+  	 * @param scanInterval	the ScanInterval holding the missing symbols
+  	 * @throws Exception	if there is no space to add a symbol
+  	 */
+  	private void addMissingSymbols(ScanInterval scanInterval) throws Exception{
+  		for(int i=0; i<scanInterval.missingSymbols.size(); i++){
+  			Huffman table = scanInterval.missingTables.get(i);
+  			byte symbol = scanInterval.missingSymbols.get(i);
+  			if(table.getCodeLength(symbol) == 0){
+  				table.addNewSymbol(symbol);
+  			}
+  		}
+  		scanInterval.missingTables.clear();
+  		scanInterval.missingSymbols.clear();
+  	}
+  	
+  	/**
+  	 * <p>Replaces the Huffman tables used by the scan with optimal tables, generated from the 
+  	 * frequency of each symbol when the scan is encoded. Tables not used by the scan are kept.
+  	 * 
+  	 * @param dcOffsets		the initial DC prediction of each component of each MCU, or null
+  	 */
+  	private void optimiseHuffmanTables(int[] dcOffsets){
+  		Map<Integer, long[]> frequenciesDC = new HashMap<Integer, long[]>();
+  		Map<Integer, long[]> frequenciesAC = new HashMap<Integer, long[]>();
+  		for(Component component: imageComponents){
+  			if(!frequenciesDC.containsKey(component.dcTableID)){
+  				frequenciesDC.put(component.dcTableID, new long[256]);
+  			}
+  			if(!frequenciesAC.containsKey(component.acTableID)){
+  				frequenciesAC.put(component.acTableID, new long[256]);
+  			}
+  		}
+  		
+  		countSymbols(frequenciesDC, frequenciesAC, dcOffsets);
+  		
+  		for(Map.Entry<Integer, long[]> entry: frequenciesDC.entrySet()){
+  			int tableID = entry.getKey();
+  			huffmanTablesDC.put(tableID, new Huffman((short)0, (short)tableID, entry.getValue()));
+  		}
+  		for(Map.Entry<Integer, long[]> entry: frequenciesAC.entrySet()){
+  			int tableID = entry.getKey();
+  			huffmanTablesAC.put(tableID, new Huffman((short)1, (short)tableID, entry.getValue()));
+  		}
+  	}
+  	
+  	/**
+  	 * <p>Counts the symbols coded with each Huffman table when the scan is encoded, following 
+  	 * the same steps as {@link #encodeMCUs} without writing any data.
+  	 * 
+  	 * @param frequenciesDC		the symbol counts of each DC table, by table id
+  	 * @param frequenciesAC		the symbol counts of each AC table, by table id
+  	 * @param dcOffsets			the initial DC prediction of each component of each MCU, or null
+  	 */
+  	private void countSymbols(Map<Integer, long[]> frequenciesDC, Map<Integer, long[]> frequenciesAC, int[] dcOffsets){
+  		int mcuCount = coefficients.getMCUCount();
+  		int componentCount = imageComponents.size();
+  		
+  		for(int mcuCtr=0; mcuCtr<mcuCount; mcuCtr++){
+  			for(int c=0; c<componentCount; c++){
+  				Component component = imageComponents.get(c);
+  				long[] dcCounts = frequenciesDC.get(component.dcTableID);
+  				long[] acCounts = frequenciesAC.get(component.acTableID);
+  				short[] values = coefficients.getComponentData(c);
+  				
+  				int lastDC = (dcOffsets == null) ? 0 : dcOffsets[(mcuCtr * componentCount) + c];
+  				int blocks = component.componentVerticalFactor * component.componentHorizontalFactor;
+  				for(int block=0; block<blocks; block++){
+  					int offset = coefficients.getBlockOffset(c, mcuCtr, block);
+  					
+  					dcCounts[reverseExtendMagnitude(values[offset] - lastDC)]++;
+  					lastDC = values[offset];
+  					
+  					int zeroRun = 0;
+  					for(int acCtr=offset+1; acCtr<offset+CoefficientStore.BLOCK_SIZE; acCtr++){
+  						if(values[acCtr] != 0){
+  							while(zeroRun >= 16){
+  								acCounts[0xF0]++;
+  								zeroRun -= 16;
   							}
+  							acCounts[(zeroRun << 4) | reverseExtendMagnitude(values[acCtr])]++;
+  							zeroRun = 0;
+  						}else{
+  							zeroRun++;
   						}
-  						if(zeroRun != 0){
-							try{
-								scanString = scanString + this.getHuffmanCode(1, currentACTableID, (byte)0x00);
-							}catch(Exception e){
-								if(acTable.checkSpace()){
-									scanString = scanString + acTable.addNewSymbol((byte)0x00);
-								}
-							}
-						}
-  						dataUnitCtr++;
   					}
+  					if(zeroRun != 0){
+  						acCounts[0x00]++;
+  					}
+  				}
+  			}
+  		}
+  	}
+  	
+  	/**
+  	 * <p>Encodes the ScanIntervals which do not yet hold data.
+  	 * 
+  	 * @param intervals		the ScanIntervals of the scan
+  	 * @param dcOffsets		the initial DC prediction of each component of each MCU, or null
+  	 */
+  	private void encodeIntervals(ScanInterval[] intervals, int[] dcOffsets){
+  		if(parallelEncoding && intervals.length > 1){
+  			ForkJoinPool.commonPool().invoke(new ScanEncodeTask(this, intervals, dcOffsets, 0, intervals.length));
+  		}else{
+  			for(ScanInterval scanInterval: intervals){
+  				if(scanInterval.data == null){
+  					encodeInterval(scanInterval, dcOffsets);
   				}
   			}
   		}
-  		//Apply padding to the scan to fill byte space
-  		if(scanString.length() % 8 != 0){
-  			int x = scanString.length() / 8;
-  			x = (x+1)*8;
-  			x = x - scanString.length();
-  			for(int i=0; i<x;i++){
-  				scanString = scanString + "1";
+  	}
+  	
+  	/**
+  	 * <p>Calculates the DC prediction adjustments needed when the restart interval of the 
+  	 * output differs from that of the cover image.
+  	 * 
+  	 * <p>The stored DC values of each MCU are relative to the cover's prediction at the start 
+  	 * of the MCU, which is reset at each of the cover's restart intervals. The adjustment is 
+  	 * the difference between the prediction of the output and that of the cover.
+  	 * 
+  	 * @param interval	the restart interval of the output
+  	 * @return			array containing the adjustment for each component of each MCU
+  	 */
+  	private int[] calculateDCOffsets(int interval){
+  		int mcuCount = coefficients.getMCUCount();
+  		int componentCount = imageComponents.size();
+  		int[] dcOffsets = new int[mcuCount * componentCount];
+  		int[] lastDC = new int[componentCount];
+  		for(int mcu=0; mcu<mcuCount; mcu++){
+  			boolean coverRestart = (restartInterval > 0) ? (mcu % restartInterval) == 0 : mcu == 0;
+  			boolean outputRestart = (interval > 0) ? (mcu % interval) == 0 : mcu == 0;
+  			for(int c=0; c<componentCount; c++){
+  				Component component = imageComponents.get(c);
+  				int coverPrediction = coverRestart ? 0 : lastDC[c];
+  				int outputPrediction = outputRestart ? 0 : lastDC[c];
+  				dcOffsets[(mcu * componentCount) + c] = outputPrediction - coverPrediction;
+  				
+  				int lastBlock = (component.componentVerticalFactor * component.componentHorizontalFactor) - 1;
+  				lastDC[c] = coverPrediction + coefficients.getComponentData(c)[coefficients.getBlockOffset(c, mcu, lastBlock)];
   			}
   		}
+  		return dcOffsets;
+  	}
+  	
+  	/**
+  	 * <p>Encodes the MCU's of a ScanInterval into its own buffer, writing a restart marker 
+  	 * at each restart interval of the output within it.
+  	 * 
+  	 * <p>If symbols are missing from the Huffman tables they are recorded in the ScanInterval, 
+  	 * and no data is set.
+  	 * 
+  	 * @param scanInterval	the ScanInterval to encode
+  	 * @param dcOffsets		the initial DC prediction of each component of each MCU, or null
+  	 */
+  	void encodeInterval(ScanInterval scanInterval, int[] dcOffsets){
+  		long estimatedLength = ((long)scanDataLength * (scanInterval.lastMCU - scanInterval.firstMCU)) / Math.max(1, coefficients.getMCUCount());
+  		ScanWriter writer = new ScanWriter((int)estimatedLength + 16);
+  		encodeMCUs(writer, scanInterval.firstMCU, scanInterval.lastMCU, dcOffsets, scanInterval);
+  		if(!scanInterval.hasMissingSymbols()){
+  			//Pad the interval to fill the final byte
+  			scanInterval.data = writer.toByteArray();
+  		}
+  	}
+  	
+  	/**
+  	 * <p>Encodes a range of MCU's, writing a restart marker at each restart interval of the 
+  	 * output within it.
+  	 * 
+  	 * @param writer		the ScanWriter to write the compressed data to
+  	 * @param firstMCU		the index of the first MCU to encode
+  	 * @param lastMCU		the index after the last MCU to encode
+  	 * @param dcOffsets		the initial DC prediction of each component of each MCU, or null
+  	 * @param scanInterval	the ScanInterval recording any missing symbols
+  	 */
+  	private void encodeMCUs(ScanWriter writer, int firstMCU, int lastMCU, int[] dcOffsets, ScanInterval scanInterval){
+  		int interval = getOutputRestartInterval();
+  		int componentCount = imageComponents.size();
   		
-  		//Add required 0x00 padding after any occurrences of 0xFF in the string
-  		byte[] scanBytes = Utils.stringToByte(scanString);
-  		byte[] padderByte = {(byte)0x00};
-  		for(int i=0; i<scanBytes.length; i++){
-  			if(scanBytes[i] == (byte)0xFF){
-  				scanBytes = Utils.insertAt(scanBytes, padderByte, i+1); 
-  				i=i+1;
+  		//Iterate through each MCU
+  		for(int mcuCtr=firstMCU; mcuCtr<lastMCU; mcuCtr++){
+  			if(interval > 0 && mcuCtr > firstMCU && (mcuCtr % interval) == 0){
+  				writer.writeRestartMarker((mcuCtr / interval) - 1);
+  			}
+  			
+  			//Iterate though each of the components
+  			for(int c=0; c<componentCount; c++){
+  				Component component = imageComponents.get(c);
+  				//Get the correct HuffmanTables for the current AC and DC values
+  				Huffman dcTable = this.huffmanTablesDC.get(component.dcTableID);
+  				Huffman acTable = this.huffmanTablesAC.get(component.acTableID);
+  				short[] values = coefficients.getComponentData(c);
+  				
+  				int lastDC = (dcOffsets == null) ? 0 : dcOffsets[(mcuCtr * componentCount) + c];
+  				int blocks = component.componentVerticalFactor * component.componentHorizontalFactor;
+  				for(int block=0; block<blocks; block++){
+  					int offset = coefficients.getBlockOffset(c, mcuCtr, block);
+  					
+  					//Write the DC value
+  					int dcDifference = values[offset] - lastDC;
+  					lastDC = values[offset];
+  					
+  					int magnitude = reverseExtendMagnitude(dcDifference);
+  					writeSymbol(writer, dcTable, (byte)magnitude, scanInterval);
+  					writer.writeBits(reverseExtendAdditional(dcDifference, magnitude), magnitude);
+  					
+  					//Write the AC values
+  					int zeroRun = 0;
+  					for(int acCtr=offset+1; acCtr<offset+CoefficientStore.BLOCK_SIZE; acCtr++){
+  						if(values[acCtr] != 0){
+  							while(zeroRun >= 16){
+  								writeSymbol(writer, acTable, (byte)0xF0, scanInterval);
+  								zeroRun -= 16;
+  							}
+  							magnitude = reverseExtendMagnitude(values[acCtr]);
+  							writeSymbol(writer, acTable, (byte)((zeroRun << 4) | magnitude), scanInterval);
+  							writer.writeBits(reverseExtendAdditional(values[acCtr], magnitude), magnitude);
+  							zeroRun = 0;
+  						}else{
+  							zeroRun++;
+  						}
+  					}
+  					if(zeroRun != 0){
+  						writeSymbol(writer, acTable, (byte)0x00, scanInterval);
+  					}
+  				}
   			}
   		}
-  		scanString = "";
-  		for(int i=0; i<scanBytes.length;i++){
-  			scanString = scanString + Integer.toBinaryString((scanBytes[i] & 0xFF)+ 0x100).substring(1);
-		}
-  		return scanString;
   	}
   	
   	/**
-  	 * <p>Gets the matching huffman symbol for a supplied code.
+  	 * <p>Writes the Huffman code of a symbol, recording the symbol in the ScanInterval if it 
+  	 * is not present in the Huffman table.
   	 * 
-  	 * @param tableClass	the class of the Huffman table
-  	 * @param tableID		the id of the Huffman table
-  	 * @param code			the code to get the Huffman symbol for
-  	 * @return
-  	 * @throws Exception
+  	 * @param writer		the ScanWriter to write the code to
+  	 * @param table			the Huffman table to code the symbol with
+  	 * @param symbol		the symbol to write
+  	 * @param scanInterval	the ScanInterval being encoded
   	 */
-	private String getHuffmanCode(int tableClass, int tableID, byte code) throws Exception{
-		Huffman huffmanTable = null;
-		
-		if(tableClass == 0){
-			huffmanTable = huffmanTablesDC.get(tableID);
-		}else if(tableClass == 1){
-			huffmanTable = huffmanTablesAC.get(tableID);
-		}
-		return huffmanTable.getCode(code);
-	}
+  	private void writeSymbol(ScanWriter writer, Huffman table, byte symbol, ScanInterval scanInterval){
+  		int length = table.getCodeLength(symbol);
+  		if(length == 0){
+  			scanInterval.addMissingSymbol(table, symbol);
+  			return;
+  		}
+  		writer.writeBits(table.getCodeValue(symbol), length);
+  	}
 	
 	/**
-	 * <p>Handles Start of Scan (SOS) markers
-	 * @param tableBytes
+	 * <p>Handles Start of Scan (SOS) markers, decompressing the entropy-coded data
+	 * which follows the marker.
+	 * 
+	 * @param tableBytes	the JPEG data
+	 * @param offset		the index of the SOS marker data
+	 * @param scanEnd		the index after the last byte of the entropy-coded data
 	 * @throws Exception
 	 */
-	private void handleScan(byte[] tableBytes) throws Exception{
-		int ctr = 0;
+	private void handleScan(ByteBuffer tableBytes, int offset, int scanEnd) throws Exception{
+		int ctr = offset;
 		
 		byte[] length = new byte[2];
-		length[0] = tableBytes[ctr];
+		length[0] = tableBytes.get(ctr);
 		ctr++;
-		length[1] = tableBytes[ctr];
+		length[1] = tableBytes.get(ctr);
 		ctr++;
 		short markerLength = (short)((length[0] << 8) | (length[1] & 0xFF));
 		
-		short compCount = (short)(0x00 << 8 | tableBytes[ctr] & 0xFF);
+		short compCount = (short)(0x00 << 8 | tableBytes.get(ctr) & 0xFF);
 		ctr++;
 		
 		ArrayList<Component> compList = new ArrayList<Component>();
 		for(int i=0; i<compCount; i++){
-			short compID = (short)((0x00 << 8) | (tableBytes[ctr] & 0xFF));
+			short compID = (short)((0x00 << 8) | (tableBytes.get(ctr) & 0xFF));
 			ctr++;
 			
-			short dcID = (short)(0x00 << 8 | (tableBytes[ctr] & 0b11110000) >> 4);
-			short acID = (short)(0x00 << 8 | (tableBytes[ctr] & 0b00001111));
+			short dcID = (short)(0x00 << 8 | (tableBytes.get(ctr) & 0b11110000) >> 4);
+			short acID = (short)(0x00 << 8 | (tableBytes.get(ctr) & 0b00001111));
 			ctr++;
 					
 			for(Component c: imageComponents){
@@ -817,13 +1250,13 @@ public class JPEGCodec implements Codec{
 		}
 		imageComponents = compList;
 		
-		byte selectionStart = tableBytes[ctr];
+		byte selectionStart = tableBytes.get(ctr);
 		ctr++;
 		
-		byte selectionEnd = tableBytes[ctr];
+		byte selectionEnd = tableBytes.get(ctr);
 		ctr++;
 
-		byte approx = tableBytes[ctr];
+		byte approx = tableBytes.get(ctr);
 		ctr++;
 		
 		int MCUx = -1;
@@ -842,10 +1275,159 @@ public class JPEGCodec implements Codec{
 			MCUy = imageComponents.get(i).MCUy;
 		}
 		
-		byte[] compressedData = Arrays.copyOfRange(tableBytes, ctr, tableBytes.length);
-		scanDataLength = compressedData.length;
+		int[] componentBlocks = new int[imageComponents.size()];
+		for(int i=0; i<imageComponents.size(); i++){
+			componentBlocks[i] = imageComponents.get(i).componentHorizontalFactor * imageComponents.get(i).componentVerticalFactor;
+		}
+		scanMCUCount = MCUx * MCUy;
+		scanComponentBlocks = componentBlocks;
+		scanBlockCount = 0;
+		for(int blocks: componentBlocks){
+			scanBlockCount += blocks * scanMCUCount;
+		}
+		
+		scanDataLength = scanEnd - ctr;
+		
+		pendingScanStart = ctr;
+		pendingScanEnd = scanEnd;
+		if(!lazyDecoding){
+			ensureDecoded();
+		}
+	}
+	
+	/**
+	 * <p>Sets whether the decompression of the scan data is delayed until the coefficients 
+	 * are needed, only the headers being read by decodeStream. Disabled by default.
+	 * 
+	 * <p>The embedding capacity is available as soon as the headers are read.
+	 * 
+	 * @param lazyDecoding	boolean value specifying if lazy decoding is used
+	 */
+	public void setLazyDecoding(boolean lazyDecoding){
+		this.lazyDecoding = lazyDecoding;
+	}
+	
+	/**
+	 * <p>Sets the cache used to store decoded scans, so a JPEG decoded before is loaded from 
+	 * the cache rather than decompressed. Null, the default, disables caching.
+	 * 
+	 * @param coefficientCache	the cache to use, or null
+	 */
+	public void setCoefficientCache(CoefficientCache coefficientCache){
+		this.coefficientCache = coefficientCache;
+	}
+	
+	/**
+	 * <p>Decompresses the scan data, if it has not already been decompressed.
+	 * 
+	 * <p>If a cache is set, the decoded scan is loaded from it when present, and stored in 
+	 * it otherwise. Failing to store the entry does not stop the decoding.
+	 * 
+	 * @throws Exception
+	 */
+	private synchronized void ensureDecoded() throws Exception{
+		if(pendingScanStart != -1){
+			coefficients = new CoefficientStore(scanMCUCount, scanComponentBlocks);
+			
+			String cacheKey = null;
+			if(coefficientCache != null){
+				cacheKey = coefficientCache.getKey(originalData);
+				ByteBuffer entry = coefficientCache.load(cacheKey);
+				if(entry != null && readCacheEntry(entry)){
+					pendingScanStart = -1;
+					return;
+				}
+			}
+			
+			decompressScanData(originalData, pendingScanStart, pendingScanEnd);
+			pendingScanStart = -1;
+			
+			if(cacheKey != null){
+				try{
+					coefficientCache.store(cacheKey, createCacheEntry());
+				}catch(IOException e){
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * <p>Creates a cache entry for the decoded scan, made up of the layout of the scan, the 
+	 * positions recorded for incremental encoding, and the coefficients of each component.
+	 * 
+	 * @return	array of buffers containing the entry, in order
+	 */
+	private ByteBuffer[] createCacheEntry(){
+		int componentCount = scanComponentBlocks.length;
+		int intervalCount = scanIntervalStarts.length;
+		ByteBuffer[] parts = new ByteBuffer[componentCount + 1];
+		
+		ByteBuffer header = ByteBuffer.allocate((4 * (5 + componentCount)) + (8 * scanMCUCount) + (8 * intervalCount));
+		header.putInt(CACHE_ENTRY_MAGIC);
+		header.putInt(scanMCUCount);
+		header.putInt(componentCount);
+		for(int blocks: scanComponentBlocks){
+			header.putInt(blocks);
+		}
+		header.putInt(scanPositionsValid ? 1 : 0);
+		header.putInt(intervalCount);
+		header.asLongBuffer().put(mcuBitEnds);
+		header.position(header.position() + (8 * scanMCUCount));
+		header.asIntBuffer().put(scanIntervalStarts).put(scanIntervalEnds);
+		header.position(header.capacity());
+		header.flip();
+		parts[0] = header;
+		
+		for(int c=0; c<componentCount; c++){
+			short[] values = coefficients.getComponentData(c);
+			ByteBuffer component = ByteBuffer.allocate(values.length * 2);
+			component.asShortBuffer().put(values);
+			parts[c + 1] = component;
+		}
+		return parts;
+	}
+	
+	/**
+	 * <p>Reads a cache entry into the coefficient store, checking it matches the layout of the scan.
+	 * 
+	 * @param entry	buffer containing the entry
+	 * @return		boolean value indicating if the entry was read
+	 */
+	private boolean readCacheEntry(ByteBuffer entry){
+		int componentCount = scanComponentBlocks.length;
+		int intervalCount = (restartInterval > 0) ? (scanMCUCount + restartInterval - 1) / restartInterval : 1;
+		long expectedLength = (4L * (5 + componentCount)) + (8L * scanMCUCount) + (8L * intervalCount) + (2L * scanBlockCount * CoefficientStore.BLOCK_SIZE);
+		if(entry.limit() != expectedLength || entry.getInt(0) != CACHE_ENTRY_MAGIC || entry.getInt(4) != scanMCUCount || entry.getInt(8) != componentCount){
+			return false;
+		}
+		for(int c=0; c<componentCount; c++){
+			if(entry.getInt(12 + (4 * c)) != scanComponentBlocks[c]){
+				return false;
+			}
+		}
+		int position = 12 + (4 * componentCount);
+		if(entry.getInt(position + 4) != intervalCount){
+			return false;
+		}
 		
-		decompressScanData(compressedData, (MCUx * MCUy));
+		scanPositionsValid = entry.getInt(position) == 1;
+		position += 8;
+		mcuBitEnds = new long[scanMCUCount];
+		scanIntervalStarts = new int[intervalCount];
+		scanIntervalEnds = new int[intervalCount];
+		entry.position(position);
+		entry.asLongBuffer().get(mcuBitEnds);
+		entry.position(position + (8 * scanMCUCount));
+		entry.asIntBuffer().get(scanIntervalStarts).get(scanIntervalEnds);
+		entry.position(position + (8 * scanMCUCount) + (8 * intervalCount));
+		
+		for(int c=0; c<componentCount; c++){
+			short[] values = coefficients.getComponentData(c);
+			entry.asShortBuffer().get(values);
+			entry.position(entry.position() + (2 * values.length));
+		}
+		return true;
 	}
 	
 	/**
@@ -854,99 +1436,151 @@ public class JPEGCodec implements Codec{
 	 * <p>Converts the JPEG into a byte array format.
 	 */
 	public byte[] genStego() throws Exception{
+		ByteBuffer[] stegoSegments = buildStegoSegments();
+		int totalLength = 0;
+		for(ByteBuffer buffer: stegoSegments){
+			totalLength += buffer.remaining();
+		}
+		ByteBuffer newBytes = ByteBuffer.allocate(totalLength);
+		for(ByteBuffer buffer: stegoSegments){
+			newBytes.put(buffer);
+		}
+		return newBytes.array();
+	}
+	
+	/**
+	 * <p>Writes the JPEG, including any embedded message, to a channel.
+	 * 
+	 * <p>The segments are written without being joined into a single array, using a 
+	 * gathering write if the channel supports it.
+	 * 
+	 * @param channel	the channel to write the JPEG to
+	 * @throws Exception
+	 */
+	public void genStego(WritableByteChannel channel) throws Exception{
+		ByteBuffer[] stegoSegments = buildStegoSegments();
+		if(channel instanceof GatheringByteChannel){
+			GatheringByteChannel gatheringChannel = (GatheringByteChannel)channel;
+			int first = 0;
+			while(first < stegoSegments.length){
+				gatheringChannel.write(stegoSegments, first, stegoSegments.length - first);
+				while(first < stegoSegments.length && !stegoSegments[first].hasRemaining()){
+					first++;
+				}
+			}
+		}else{
+			for(ByteBuffer buffer: stegoSegments){
+				while(buffer.hasRemaining()){
+					channel.write(buffer);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * <p>Builds the segments making up the JPEG, including any embedded message.
+	 * 
+	 * <p>The scan is encoded once, adding any symbols missing from the Huffman tables. The 
+	 * segments of the original JPEG are then used unchanged, except for:
+	 * <ul>
+	 * <li>the first DHT segment, which is replaced by the updated Huffman tables, later 
+	 * DHT segments being removed</li>
+	 * <li>the DRI segment, which is replaced if the restart interval of the output differs,
+	 * or inserted before the SOS segment if the original has none</li>
+	 * <li>the SOS segment, which keeps its header followed by the new scan data</li>
+	 * </ul>
+	 * 
+	 * @return	array of buffers containing the JPEG, in order
+	 * @throws Exception
+	 */
+	private ByteBuffer[] buildStegoSegments() throws Exception{
+		ensureDecoded();
+		byte[] scanData = encodeScan();
+		int interval = getOutputRestartInterval();
+		
+		ArrayList<ByteBuffer> stegoSegments = new ArrayList<ByteBuffer>();
 		boolean outputHuffmanTables = false;
-		byte[] newBytes = originalBytes;
-		for(int i=0; i< newBytes.length; i++){
-			if(newBytes[i] == (byte)0xFF){
-				i++;
-				if(newBytes[i] == MARKER_TYPE_SOI){
-				}else if(newBytes[i] == MARKER_TYPE_SOF_BASELINE){
-				}else if(newBytes[i] == MARKER_TYPE_SOF_EXTENDED){
-				}else if(newBytes[i] == MARKER_TYPE_DHT){
-					int start = i-1;
-					
-					byte[] length = new byte[2];
-					i++;
-					length[0] = newBytes[i];
-					i++;
-					length[1] = newBytes[i];
-					short markerLength = (short) ((length[0] << 8) | (length[1] & 0xFF));
-					int end = i+(markerLength-1);
-					
-					//Remove the old huffman tables
-					newBytes = Utils.joinByteArray(Arrays.copyOfRange(newBytes, 0, start), Arrays.copyOfRange(newBytes, end, newBytes.length));
-					i = start-1;
-					
-					//Insert new ones 
-					int insertAtIndex = start;
-					if(!outputHuffmanTables){
-						encodeScan();
-						for(int j=0; j<huffmanTablesDC.size(); j++){
-							Huffman h = huffmanTablesDC.get(j);
-							
-							byte[] hBytes = Utils.stringToByte(h.genDHTString());
-							byte[] bytesDHT;
-							byte[] markerBytes = {(byte)0xFF, (byte)MARKER_TYPE_DHT};
-							byte[] lengthBytes = Utils.shortToByteArray((short) (hBytes.length+2));
-							bytesDHT = Utils.joinByteArray(markerBytes, lengthBytes);
-							bytesDHT = Utils.joinByteArray(bytesDHT, hBytes);
-							
-							newBytes = Utils.insertAt(newBytes, bytesDHT, insertAtIndex);
-							insertAtIndex = insertAtIndex + bytesDHT.length;
-						}
-						for(int j=0; j<huffmanTablesAC.size(); j++){
-							Huffman h = huffmanTablesAC.get(j);
-							
-							byte[] hBytes = Utils.stringToByte(h.genDHTString());
-							byte[] bytesDHT;
-							byte[] markerBytes = {(byte)0xFF, (byte)MARKER_TYPE_DHT};
-							byte[] lengthBytes = Utils.shortToByteArray((short) (hBytes.length+2));
-							bytesDHT = Utils.joinByteArray(markerBytes, lengthBytes);
-							bytesDHT = Utils.joinByteArray(bytesDHT, hBytes);
-							
-							newBytes = Utils.insertAt(newBytes, bytesDHT, insertAtIndex);
-							insertAtIndex = insertAtIndex + bytesDHT.length;
-						}
-						i = insertAtIndex-1;
-						outputHuffmanTables = true;
+		boolean outputRestartInterval = false;
+		int copyFrom = 0;
+		for(Segment segment: segments){
+			if(segment.type == MARKER_TYPE_DHT){
+				stegoSegments.add(getOriginalRange(copyFrom, segment.offset - copyFrom));
+				copyFrom = segment.getEnd();
+				
+				//Replace the first table with the new ones, removing the others 
+				if(!outputHuffmanTables){
+					for(int j=0; j<huffmanTablesDC.size(); j++){
+						stegoSegments.add(ByteBuffer.wrap(genDHTSegment(huffmanTablesDC.get(j))));
 					}
-				}else if(newBytes[i] == MARKER_TYPE_DQT){
-				}else if(newBytes[i] == MARKER_TYPE_DRI){
-				}else if(newBytes[i] == MARKER_TYPE_SOS){
-					int start = i-1;
-					
-					byte[] length = new byte[2];
-					i++;
-					int headerStart = i;
-					length[0] = newBytes[i];
-					i++;
-					length[1] = newBytes[i];
-					short markerLength = (short) ((length[0] << 8) | (length[1] & 0xFF));
-					int end = i + markerLength;
-					
-					byte[] markerHeader = new byte[markerLength];
-					for(int j=0; j<markerLength; j++){
-						markerHeader[j] = newBytes[headerStart + j];
+					for(int j=0; j<huffmanTablesAC.size(); j++){
+						stegoSegments.add(ByteBuffer.wrap(genDHTSegment(huffmanTablesAC.get(j))));
 					}
-
-					newBytes = Utils.joinByteArray(Arrays.copyOfRange(newBytes, 0, start), Arrays.copyOfRange(newBytes, (end + scanDataLength + 1), newBytes.length));
-					
-					byte[] markerBytes = {(byte)0xFF, (byte)MARKER_TYPE_SOS};
-					byte[] bytesSOSHeader = Utils.joinByteArray(markerBytes, markerHeader);
-					byte[] bytesSOSData = Utils.stringToByte(encodeScan());
-					byte[] bytesSOS = Utils.joinByteArray(bytesSOSHeader, bytesSOSData);
-					newBytes = Utils.insertAt(newBytes, bytesSOS, start);
-					
-					i = start + bytesSOS.length;
-				}else if(newBytes[i] == MARKER_TYPE_COM){
-				}else if(newBytes[i] >= MARKER_TYPE_APP_START && newBytes[i] <= MARKER_TYPE_APP_END){
-				}else if(newBytes[i] == MARKER_TYPE_EOI){
-					break;
-				}else if(newBytes[i] == 0x00){
+					outputHuffmanTables = true;
+				}
+			}else if(segment.type == MARKER_TYPE_DRI){
+				//Set the restart interval used for the output
+				if(interval != restartInterval){
+					stegoSegments.add(getOriginalRange(copyFrom, segment.offset - copyFrom));
+					copyFrom = segment.getEnd();
+					stegoSegments.add(ByteBuffer.wrap(genDRISegment(interval)));
+				}
+				outputRestartInterval = true;
+			}else if(segment.type == MARKER_TYPE_SOS){
+				stegoSegments.add(getOriginalRange(copyFrom, segment.offset - copyFrom));
+				copyFrom = segment.getEnd();
+				
+				if(!outputRestartInterval && interval > 0){
+					//Original has no restart interval, insert one
+					stegoSegments.add(ByteBuffer.wrap(genDRISegment(interval)));
+					outputRestartInterval = true;
 				}
+				
+				int headerLength = ((originalData.get(segment.offset+2) & 0xFF) << 8) | (originalData.get(segment.offset+3) & 0xFF);
+				stegoSegments.add(getOriginalRange(segment.offset, headerLength + 2));
+				stegoSegments.add(ByteBuffer.wrap(scanData));
 			}
-		}	
-		return newBytes;
+		}
+		stegoSegments.add(getOriginalRange(copyFrom, originalData.limit() - copyFrom));
+		return stegoSegments.toArray(new ByteBuffer[stegoSegments.size()]);
+	}
+	
+	/**
+	 * <p>Creates a buffer over a range of the original JPEG, sharing its content.
+	 * 
+	 * @param offset	the index of the first byte of the range
+	 * @param length	the amount of bytes in the range
+	 * @return			buffer containing the range
+	 */
+	private ByteBuffer getOriginalRange(int offset, int length){
+		ByteBuffer range = originalData.duplicate();
+		range.position(offset);
+		range.limit(offset + length);
+		return range.slice();
+	}
+	
+	/**
+	 * <p>Generates a Define Huffman Table (DHT) segment for a single Huffman table.
+	 * 
+	 * @param table	the Huffman table to define
+	 * @return		byte array containing the DHT segment
+	 */
+	private byte[] genDHTSegment(Huffman table){
+		byte[] hBytes = table.genDHTBytes();
+		byte[] markerBytes = {(byte)0xFF, MARKER_TYPE_DHT};
+		byte[] lengthBytes = Utils.shortToByteArray((short) (hBytes.length+2));
+		byte[] bytesDHT = Utils.joinByteArray(markerBytes, lengthBytes);
+		return Utils.joinByteArray(bytesDHT, hBytes);
+	}
+	
+	/**
+	 * <p>Generates a Define Restart Interval (DRI) segment.
+	 * 
+	 * @param interval	the restart interval, in MCU's
+	 * @return			byte array containing the DRI segment
+	 */
+	private byte[] genDRISegment(int interval){
+		byte[] markerBytes = {(byte)0xFF, MARKER_TYPE_DRI, 0x00, 0x04};
+		return Utils.joinByteArray(markerBytes, Utils.shortToByteArray((short)interval));
 	}
 	
 	/**
@@ -954,40 +1588,41 @@ public class JPEGCodec implements Codec{
 	 * 
 	 * <p>Generates a Huffman tree representation for each define table in the define structure.
 	 * 
-	 * @param tableBytes	byte array containing the DHT data
+	 * @param tableBytes	the JPEG data
+	 * @param offset		the index of the DHT marker data
 	 */
-	private void generateHuffmanTables(byte[] tableBytes){
+	private void generateHuffmanTables(ByteBuffer tableBytes, int offset){
 		short tableClass;
 		short tableID;
 		short[] codeLengths = new short[16];
 		
 		short[] codeSymbols;
 		
-		int ctr = 0;
+		int ctr = offset;
 		
 		byte[] length = new byte[2];
-		length[0] = tableBytes[ctr];
+		length[0] = tableBytes.get(ctr);
 		ctr++;
-		length[1] = tableBytes[ctr];
+		length[1] = tableBytes.get(ctr);
 		short markerLength = (short)(((length[0] << 8) | (length[1] & 0xFF))-2);
 		ctr++;
 		
 		boolean finished = false;
 		while(!finished){			
-			tableClass = (short)(0x00 << 8 | (tableBytes[ctr] & 0b11110000) >> 4);
-			tableID = (short)(0x00 << 8 | (tableBytes[ctr] & 0b00001111));
+			tableClass = (short)(0x00 << 8 | (tableBytes.get(ctr) & 0b11110000) >> 4);
+			tableID = (short)(0x00 << 8 | (tableBytes.get(ctr) & 0b00001111));
 			ctr++;
 			
 			int totalCodeLength = 0;
 			for(int j=0; j<16; j++){
-				short codeLength = (short)(0x00 << 8 | (tableBytes[ctr] & 0b11111111));
+				short codeLength = (short)(0x00 << 8 | (tableBytes.get(ctr) & 0b11111111));
 				codeLengths[j] = codeLength;
 				totalCodeLength += codeLength;
 				ctr++;
 			}	
 			codeSymbols = new short[totalCodeLength];
 			for(int j=0; j<totalCodeLength; j++){
-				codeSymbols[j] = (short)(0x00 << 8 | (tableBytes[ctr] & 0b11111111));
+				codeSymbols[j] = (short)(0x00 << 8 | (tableBytes.get(ctr) & 0b11111111));
 				ctr++;
 			}
 			if(tableClass == 0){
@@ -995,7 +1630,7 @@ public class JPEGCodec implements Codec{
 			}else if(tableClass == 1){
 				huffmanTablesAC.put((int)tableID, new Huffman(tableClass, tableID, codeLengths, codeSymbols));
 			}
-			if(ctr == tableBytes.length){
+			if(ctr >= (offset + 2 + markerLength)){
 				finished = true;
 			}
 		}
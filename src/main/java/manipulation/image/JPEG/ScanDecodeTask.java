@@ -0,0 +1,72 @@
+package manipulation.image.JPEG;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>Fork/join task which decodes a range of the restart intervals of a JPEG scan.
+ *
+ * <p>The range is split in half until it holds no more than the minimum amount of
+ * intervals, each remaining range then being decoded by the JPEGCodec on its own reader.
+ *
+ * @author Ashley Allott
+ */
+class ScanDecodeTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	private JPEGCodec codec;
+	private ByteBuffer data;
+	private int[] intervalStarts;
+	private int[] intervalEnds;
+	private int firstInterval;
+	private int lastInterval;
+	private int minimumIntervals;
+
+	/**
+	 * <p>Constructor, creates a new task to decode a range of restart intervals.
+	 *
+	 * @param codec				the JPEGCodec which decodes the intervals
+	 * @param data				the JPEG data
+	 * @param intervalStarts	the index of the first byte of each restart interval
+	 * @param intervalEnds		the index after the last byte of each restart interval
+	 * @param firstInterval		the first interval to decode
+	 * @param lastInterval		the interval after the last interval to decode
+	 * @param minimumIntervals	the amount of intervals below which the range is not split
+	 */
+	ScanDecodeTask(JPEGCodec codec, ByteBuffer data, int[] intervalStarts, int[] intervalEnds, int firstInterval, int lastInterval, int minimumIntervals){
+		this.codec = codec;
+		this.data = data;
+		this.intervalStarts = intervalStarts;
+		this.intervalEnds = intervalEnds;
+		this.firstInterval = firstInterval;
+		this.lastInterval = lastInterval;
+		this.minimumIntervals = minimumIntervals;
+	}
+
+	@Override
+	protected void compute(){
+		if(lastInterval - firstInterval <= minimumIntervals){
+			try{
+				codec.decodeIntervals(data, intervalStarts, intervalEnds, firstInterval, lastInterval);
+			}catch(Exception e){
+				throw new ScanDecodeException(e);
+			}
+		}else{
+			int middle = (firstInterval + lastInterval) >>> 1;
+			invokeAll(new ScanDecodeTask(codec, data, intervalStarts, intervalEnds, firstInterval, middle, minimumIntervals),
+					new ScanDecodeTask(codec, data, intervalStarts, intervalEnds, middle, lastInterval, minimumIntervals));
+		}
+	}
+
+	/**
+	 * <p>Unchecked exception carrying a decoding failure out of the fork/join pool.
+	 */
+	static class ScanDecodeException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ScanDecodeException(Exception cause){
+			super(cause);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package manipulation.image.JPEG;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>Fork/join task which encodes a range of the ScanIntervals of a JPEG scan.
+ *
+ * <p>The range is split in half until a single ScanInterval remains, which is then encoded
+ * by the JPEGCodec into its own buffer. Intervals which already hold data are skipped.
+ *
+ * @author Ashley Allott
+ */
+class ScanEncodeTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	private JPEGCodec codec;
+	private ScanInterval[] intervals;
+	private int[] dcOffsets;
+	private int firstInterval;
+	private int lastInterval;
+
+	/**
+	 * <p>Constructor, creates a new task to encode a range of ScanIntervals.
+	 *
+	 * @param codec				the JPEGCodec which encodes the intervals
+	 * @param intervals			the ScanIntervals of the scan
+	 * @param dcOffsets			the initial DC prediction of each component of each MCU, or null
+	 * @param firstInterval		the first interval to encode
+	 * @param lastInterval		the interval after the last interval to encode
+	 */
+	ScanEncodeTask(JPEGCodec codec, ScanInterval[] intervals, int[] dcOffsets, int firstInterval, int lastInterval){
+		this.codec = codec;
+		this.intervals = intervals;
+		this.dcOffsets = dcOffsets;
+		this.firstInterval = firstInterval;
+		this.lastInterval = lastInterval;
+	}
+
+	@Override
+	protected void compute(){
+		if(lastInterval - firstInterval <= 1){
+			if(intervals[firstInterval].data == null){
+				codec.encodeInterval(intervals[firstInterval], dcOffsets);
+			}
+		}else{
+			int middle = (firstInterval + lastInterval) >>> 1;
+			invokeAll(new ScanEncodeTask(codec, intervals, dcOffsets, firstInterval, middle),
+					new ScanEncodeTask(codec, intervals, dcOffsets, middle, lastInterval));
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package manipulation.image.JPEG;
+
+import java.util.ArrayList;
+
+/**
+ * <p>Class which holds a range of MCU's of a JPEG scan being encoded on its own, together
+ * with the resulting compressed data.
+ *
+ * <p>Symbols which are missing from the Huffman tables are recorded rather than added, in the
+ * order they are found, so the tables are only changed once every range has been encoded.
+ *
+ * @author Ashley Allott
+ */
+class ScanInterval {
+
+	int firstMCU;
+	int lastMCU;
+
+	byte[] data;
+
+	ArrayList<Huffman> missingTables;
+	ArrayList<Byte> missingSymbols;
+
+	/**
+	 * <p>Constructor, creates a new range of MCU's to be encoded.
+	 *
+	 * @param firstMCU	the index of the first MCU in the range
+	 * @param lastMCU	the index after the last MCU in the range
+	 */
+	ScanInterval(int firstMCU, int lastMCU){
+		this.firstMCU = firstMCU;
+		this.lastMCU = lastMCU;
+		this.data = null;
+		this.missingTables = new ArrayList<Huffman>();
+		this.missingSymbols = new ArrayList<Byte>();
+	}
+
+	/**
+	 * <p>Records a symbol missing from a Huffman table, ignoring symbols already recorded.
+	 *
+	 * @param table		the Huffman table the symbol is missing from
+	 * @param symbol	the missing symbol
+	 */
+	void addMissingSymbol(Huffman table, byte symbol){
+		for(int i=0; i<missingSymbols.size(); i++){
+			if(missingTables.get(i) == table && missingSymbols.get(i) == symbol){
+				return;
+			}
+		}
+		missingTables.add(table);
+		missingSymbols.add(symbol);
+	}
+
+	/**
+	 * <p>Checks if any symbols were found to be missing when encoding the range.
+	 *
+	 * @return	boolean value indicating if symbols are missing
+	 */
+	boolean hasMissingSymbols(){
+		return !missingSymbols.isEmpty();
+	}
+}
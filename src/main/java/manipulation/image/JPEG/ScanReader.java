@@ -0,0 +1,185 @@
+package manipulation.image.JPEG;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Class which reads the entropy-coded scan data of a JPEG image.
+ *
+ * <p>The raw scan bytes are loaded into a 64 bit register as bits are required, removing
+ * the 0x00 stuffed after any 0xFF data byte as they are loaded. Loading stops at the first
+ * marker found, restart (RSTn) markers are passed via {@link #restart()}.
+ *
+ * @author Ashley Allott
+ */
+public class ScanReader {
+
+	private ByteBuffer data;
+	private int position;
+	private int end;
+
+	private long bitBuffer;
+	private int bitCount;
+	private long loadedBits;
+
+	private int marker;
+
+	/**
+	 * <p>Constructor, creates a new ScanReader over a range of raw scan data.
+	 *
+	 * @param data		the buffer containing the scan data
+	 * @param start		the index of the first byte of the scan data
+	 * @param end		the index after the last byte of the scan data
+	 */
+	public ScanReader(ByteBuffer data, int start, int end){
+		this.data = data;
+		this.position = start;
+		this.end = end;
+		this.bitBuffer = 0;
+		this.bitCount = 0;
+		this.loadedBits = 0;
+		this.marker = -1;
+	}
+
+	/**
+	 * <p>Loads bytes into the bit register until it is full, or a marker or the end of
+	 * the data is reached.
+	 */
+	private void fill(){
+		while(bitCount <= 56 && marker == -1 && position < end){
+			int value = data.get(position) & 0xFF;
+			if(value == 0xFF){
+				if(position + 1 >= end){
+					position = end;
+					break;
+				}
+				int next = data.get(position + 1) & 0xFF;
+				if(next == 0x00){
+					//Stuffed byte
+					position += 2;
+				}else if(next == 0xFF){
+					//Fill byte
+					position++;
+					continue;
+				}else{
+					marker = next;
+					break;
+				}
+			}else{
+				position++;
+			}
+			bitBuffer = (bitBuffer << 8) | value;
+			bitCount += 8;
+			loadedBits += 8;
+		}
+	}
+
+	/**
+	 * <p>Gets the next bits of the scan without moving past them (1,32). Bits past
+	 * the end of the scan data are read as 0.
+	 *
+	 * @param numberOfBits	the amount of bits to peek
+	 * @return				integer value containing the bits, rightmost aligned
+	 */
+	public int peekBits(int numberOfBits){
+		if(bitCount < numberOfBits){
+			fill();
+			if(bitCount < numberOfBits){
+				return (int)((bitBuffer << (numberOfBits - bitCount)) & ((1L << numberOfBits) - 1));
+			}
+		}
+		return (int)((bitBuffer >>> (bitCount - numberOfBits)) & ((1L << numberOfBits) - 1));
+	}
+
+	/**
+	 * <p>Moves past the next bits of the scan (0,32).
+	 *
+	 * @param numberOfBits	the amount of bits to skip
+	 * @throws Exception
+	 */
+	public void skipBits(int numberOfBits) throws Exception{
+		if(bitCount < numberOfBits){
+			fill();
+			if(bitCount < numberOfBits){
+				throw new Exception("Reached end of scan data");
+			}
+		}
+		bitCount -= numberOfBits;
+	}
+	
+	/**
+	 * <p>Moves past any amount of the next bits of the scan.
+	 * 
+	 * @param numberOfBits	the amount of bits to skip
+	 * @throws Exception
+	 */
+	public void skip(long numberOfBits) throws Exception{
+		while(numberOfBits > 32){
+			skipBits(32);
+			numberOfBits -= 32;
+		}
+		skipBits((int)numberOfBits);
+	}
+
+	/**
+	 * <p>Gets, and moves past, the next bits of the scan (0,32).
+	 *
+	 * @param numberOfBits	the amount of bits to read
+	 * @return				integer value containing the bits, rightmost aligned
+	 * @throws Exception
+	 */
+	public int getBits(int numberOfBits) throws Exception{
+		if(numberOfBits == 0){
+			return 0;
+		}
+		int value = peekBits(numberOfBits);
+		skipBits(numberOfBits);
+		return value;
+	}
+
+	/**
+	 * <p>Handles the end of a restart interval, discarding the padding bits of the current
+	 * byte and moving past the following restart marker.
+	 *
+	 * @return	boolean value indicating if a restart marker was found
+	 */
+	public boolean restart(){
+		bitBuffer = 0;
+		bitCount = 0;
+		loadedBits = 0;
+		while(marker == -1 && position < end){
+			if((data.get(position) & 0xFF) == 0xFF && position + 1 < end){
+				int next = data.get(position + 1) & 0xFF;
+				if(next != 0x00 && next != 0xFF){
+					marker = next;
+					break;
+				}
+			}
+			position++;
+		}
+		if(marker >= (JPEGCodec.MARKER_TYPE_RST_START & 0xFF) && marker <= (JPEGCodec.MARKER_TYPE_RST_END & 0xFF)){
+			position += 2;
+			marker = -1;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * <p>Gets the amount of bits read since the start of the scan data, or since the last 
+	 * restart marker. Stuffed bytes are not counted.
+	 * 
+	 * @return	the amount of bits read
+	 */
+	public long getBitPosition(){
+		return loadedBits - bitCount;
+	}
+	
+	/**
+	 * <p>Gets the index of the next raw byte to be loaded.
+	 *
+	 * @return	the index of the next byte
+	 */
+	public int getPosition(){
+		return position;
+	}
+}
@@ -0,0 +1,154 @@
+package manipulation.image.JPEG;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>Class which writes the entropy-coded scan data of a JPEG image.
+ *
+ * <p>Bits are packed into a growable byte buffer, with a 0x00 stuffed after any
+ * 0xFF byte as it is written.
+ *
+ * @author Ashley Allott
+ */
+public class ScanWriter {
+
+	private byte[] data;
+	private int length;
+
+	private long bitBuffer;
+	private int bitCount;
+
+	/**
+	 * <p>Constructor, creates a new, empty ScanWriter.
+	 *
+	 * @param initialCapacity	the amount of bytes to initially allocate
+	 */
+	public ScanWriter(int initialCapacity){
+		this.data = new byte[Math.max(initialCapacity, 16)];
+		this.length = 0;
+		this.bitBuffer = 0;
+		this.bitCount = 0;
+	}
+
+	/**
+	 * <p>Writes the specified amount of rightmost bits of a value (0,32).
+	 *
+	 * @param value			integer value containing the bits to write
+	 * @param numberOfBits	the amount of bits to write
+	 */
+	public void writeBits(int value, int numberOfBits){
+		if(numberOfBits == 0){
+			return;
+		}
+		bitBuffer = (bitBuffer << numberOfBits) | (value & ((1L << numberOfBits) - 1));
+		bitCount += numberOfBits;
+		while(bitCount >= 8){
+			bitCount -= 8;
+			writeByte((int)(bitBuffer >>> bitCount) & 0xFF);
+		}
+	}
+
+	/**
+	 * <p>Copies bits from a ScanReader, as they are, to the scan.
+	 *
+	 * @param reader		the ScanReader to copy the bits from
+	 * @param numberOfBits	the amount of bits to copy
+	 * @throws Exception	if the reader runs out of data
+	 */
+	public void copyBits(ScanReader reader, long numberOfBits) throws Exception{
+		while(numberOfBits > 32){
+			writeBits(reader.getBits(32), 32);
+			numberOfBits -= 32;
+		}
+		writeBits(reader.getBits((int)numberOfBits), (int)numberOfBits);
+	}
+
+	/**
+	 * <p>Copies entropy-coded data, which is already byte stuffed, to the scan. The current
+	 * byte is padded first.
+	 *
+	 * @param source	the buffer containing the data
+	 * @param offset	the index of the first byte to copy
+	 * @param count		the amount of bytes to copy
+	 */
+	public void writeCodedBytes(ByteBuffer source, int offset, int count){
+		flush();
+		ensureCapacity(count);
+		ByteBuffer range = source.duplicate();
+		range.position(offset);
+		range.get(data, length, count);
+		length += count;
+	}
+
+	/**
+	 * <p>Writes a byte to the buffer, stuffing a 0x00 byte after a 0xFF.
+	 *
+	 * @param value	the byte to write
+	 */
+	private void writeByte(int value){
+		ensureCapacity(2);
+		data[length] = (byte)value;
+		length++;
+		if(value == 0xFF){
+			data[length] = 0x00;
+			length++;
+		}
+	}
+
+	/**
+	 * <p>Ensures the buffer has space for the specified amount of bytes, doubling
+	 * its size when full.
+	 *
+	 * @param required	the amount of bytes required
+	 */
+	private void ensureCapacity(int required){
+		if(length + required > data.length){
+			data = Arrays.copyOf(data, Math.max(data.length * 2, length + required));
+		}
+	}
+
+	/**
+	 * <p>Pads the current byte with 1 bits, as required at the end of the scan
+	 * and before restart markers.
+	 */
+	public void flush(){
+		if(bitCount > 0){
+			writeBits((1 << (8 - bitCount)) - 1, 8 - bitCount);
+		}
+	}
+
+	/**
+	 * <p>Ends the current restart interval, padding the current byte and writing a
+	 * restart (RSTn) marker.
+	 *
+	 * @param number	the number of the restart marker, used modulo 8
+	 */
+	public void writeRestartMarker(int number){
+		flush();
+		ensureCapacity(2);
+		data[length] = (byte)0xFF;
+		length++;
+		data[length] = (byte)(JPEGCodec.MARKER_TYPE_RST_START + (number & 0b111));
+		length++;
+	}
+
+	/**
+	 * <p>Gets the amount of bytes written, excluding any incomplete byte.
+	 *
+	 * @return	the amount of bytes written
+	 */
+	public int size(){
+		return length;
+	}
+
+	/**
+	 * <p>Pads the final byte and gets the written scan data.
+	 *
+	 * @return	byte array containing the scan data
+	 */
+	public byte[] toByteArray(){
+		flush();
+		return Arrays.copyOf(data, length);
+	}
+}
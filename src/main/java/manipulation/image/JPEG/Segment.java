@@ -0,0 +1,48 @@
+package manipulation.image.JPEG;
+
+/**
+ * <p>Class which handles the location of a marker segment within a JPEG byte array.
+ *
+ * <p>A segment starts at the 0xFF of its marker and runs up to the next marker. For a
+ * Start of Scan (SOS) segment this includes the entropy-coded data, and any restart
+ * markers, following the scan header.
+ *
+ * @author Ashley Allott
+ */
+public class Segment {
+
+	public byte type;
+	public int offset;
+	public int length;
+
+	/**
+	 * <p>Constructor, creates a new segment using the passed parameters.
+	 *
+	 * @param type		the marker type of the segment
+	 * @param offset	the index of the 0xFF byte of the marker
+	 * @param length	the amount of bytes in the segment, including the marker
+	 */
+	public Segment(byte type, int offset, int length){
+		this.type = type;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * <p>Gets the index of the data following the marker, starting with the length field.
+	 *
+	 * @return	the index of the marker data
+	 */
+	public int getDataOffset(){
+		return offset + 2;
+	}
+
+	/**
+	 * <p>Gets the index after the last byte of the segment.
+	 *
+	 * @return	the index of the end of the segment
+	 */
+	public int getEnd(){
+		return offset + length;
+	}
+}
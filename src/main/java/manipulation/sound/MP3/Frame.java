@@ -128,9 +128,9 @@ public class Frame {
 		if(header.crc){
 			try{
 				crc = new byte[2];
-				for(int i=0; i<crc.length; i++){
-					crc[i] = (byte)bS.getBits(8);
-				}
+				int crcBits = bS.getBits(16);
+				crc[0] = (byte)(crcBits >> 8);
+				crc[1] = (byte)crcBits;
 			}catch(BitStreamException e){
 				e.printStackTrace();
 			}
@@ -139,104 +139,110 @@ public class Frame {
 	
 	/**
 	 * <p>Gets the side information from the bitStream
+	 * 
+	 * <p>The fields before the granules are read at once, then each granule of each 
+	 * channel is read as a single 59 bit block, the fields being taken from the block.
 	 */
 	private void getSideInfo(){
 		sideInfo = new SideInfo();
 		try{
-			sideInfo.mainDataBegin = bS.getBits(9);
-
-			if(header.channelMode == Header.CHANNEL_MODE_SINGLE_CHANNEL){
-				//5 bit length
-				sideInfo.privateBits = (byte)bS.getBits(5);
-			}else{
-				//3 bit length
-				sideInfo.privateBits = (byte)bS.getBits(3);
-			}
-			
-			//4 bit length
 			int channels = 0;
+			int privateLength;
 			if(header.channelMode == Header.CHANNEL_MODE_SINGLE_CHANNEL){
 				channels = 1;
+				//5 bit length
+				privateLength = 5;
 			}else{
 				channels = 2;
+				//3 bit length
+				privateLength = 3;
 			}
+			
+			//9 bit main data begin, the private bits, and 4 bits of scfsi per channel
+			int infoLength = 9 + privateLength + (4 * channels);
+			int infoBits = bS.getBits(infoLength);
+			sideInfo.mainDataBegin = infoBits >>> (infoLength - 9);
+			sideInfo.privateBits = (byte)((infoBits >>> (4 * channels)) & ((1 << privateLength) - 1));
 			for(int i=0; i<channels; i++){
-				sideInfo.ch[i].scfsi[0] = (byte)bS.getBits(1);
-				sideInfo.ch[i].scfsi[1] = (byte)bS.getBits(1);
-				sideInfo.ch[i].scfsi[2] = (byte)bS.getBits(1);
-				sideInfo.ch[i].scfsi[3] = (byte)bS.getBits(1);
+				int scfsi = infoBits >>> (4 * (channels - 1 - i));
+				sideInfo.ch[i].scfsi[0] = (byte)((scfsi >>> 3) & 0b1);
+				sideInfo.ch[i].scfsi[1] = (byte)((scfsi >>> 2) & 0b1);
+				sideInfo.ch[i].scfsi[2] = (byte)((scfsi >>> 1) & 0b1);
+				sideInfo.ch[i].scfsi[3] = (byte)(scfsi & 0b1);
 			}
 				
 			for(int gr=0; gr<2; gr++){
 				for(int ch=0; ch<channels; ch++){
+					Granule granule = sideInfo.ch[ch].gr[gr];
+					long granuleBits = bS.getLong(59);
+					
 					//12 bit length
-					sideInfo.ch[ch].gr[gr].part2_3_length = bS.getBits(12);
+					granule.part2_3_length = (int)((granuleBits >>> 47) & 0xFFF);
 					
 					//9 bit length
-					sideInfo.ch[ch].gr[gr].big_Values = bS.getBits(9);
+					granule.big_Values = (int)((granuleBits >>> 38) & 0x1FF);
 					
 					//8 bit length
-					sideInfo.ch[ch].gr[gr].global_Gain = bS.getBits(8);
+					granule.global_Gain = (int)((granuleBits >>> 30) & 0xFF);
 					
 					//4 bit length
-					sideInfo.ch[ch].gr[gr].scaleFac_Compress = bS.getBits(4);
+					granule.scaleFac_Compress = (int)((granuleBits >>> 26) & 0xF);
 					
 					//1 bit length
-					sideInfo.ch[ch].gr[gr].window_Switching = (byte)bS.getBits(1);
+					granule.window_Switching = (byte)((granuleBits >>> 25) & 0b1);
 					
-					if(sideInfo.ch[ch].gr[gr].window_Switching != 0){
+					if(granule.window_Switching != 0){
 						//2 bit length
-						sideInfo.ch[ch].gr[gr].block_type =  (byte)bS.getBits(2);
+						granule.block_type = (byte)((granuleBits >>> 23) & 0b11);
 						
 						//1 bit length
-						sideInfo.ch[ch].gr[gr].mixed_blockFlag = (byte)bS.getBits(1);
+						granule.mixed_blockFlag = (byte)((granuleBits >>> 22) & 0b1);
 						
 						//10 bit length (5x2)
-						sideInfo.ch[ch].gr[gr].table_select = new byte[2];
-						sideInfo.ch[ch].gr[gr].table_select[0] = (byte)bS.getBits(5);							
-						sideInfo.ch[ch].gr[gr].table_select[1] = (byte)bS.getBits(5);	
+						granule.table_select = new byte[2];
+						granule.table_select[0] = (byte)((granuleBits >>> 17) & 0x1F);
+						granule.table_select[1] = (byte)((granuleBits >>> 12) & 0x1F);
 						
 						//9 bits length (3x3)
-						sideInfo.ch[ch].gr[gr].subblock_gain = new byte[3];
-						sideInfo.ch[ch].gr[gr].subblock_gain[0] = (byte)bS.getBits(3);
-						sideInfo.ch[ch].gr[gr].subblock_gain[1] = (byte)bS.getBits(3);
-						sideInfo.ch[ch].gr[gr].subblock_gain[2] = (byte)bS.getBits(3);
+						granule.subblock_gain = new byte[3];
+						granule.subblock_gain[0] = (byte)((granuleBits >>> 9) & 0b111);
+						granule.subblock_gain[1] = (byte)((granuleBits >>> 6) & 0b111);
+						granule.subblock_gain[2] = (byte)((granuleBits >>> 3) & 0b111);
 						
-						if(sideInfo.ch[ch].gr[gr].block_type == 0){
+						if(granule.block_type == 0){
 							//ERROR
-						}else if(sideInfo.ch[ch].gr[gr].block_type == 2 && sideInfo.ch[ch].gr[gr].mixed_blockFlag == 0){
-							sideInfo.ch[ch].gr[gr].region0_count = 8;
+						}else if(granule.block_type == 2 && granule.mixed_blockFlag == 0){
+							granule.region0_count = 8;
 						}else{
-							sideInfo.ch[ch].gr[gr].region0_count = 7;
+							granule.region0_count = 7;
 						}	
-						sideInfo.ch[ch].gr[gr].region1_count = (byte)(20 - sideInfo.ch[ch].gr[gr].region0_count);
+						granule.region1_count = (byte)(20 - granule.region0_count);
 						
 					}else{
 						
-						sideInfo.ch[ch].gr[gr].block_type = 0;
-						sideInfo.ch[ch].gr[gr].mixed_blockFlag = 0;
-						
+						granule.block_type = 0;
+						granule.mixed_blockFlag = 0;
 						
 						//15 bit length (5x3)
-						sideInfo.ch[ch].gr[gr].table_select = new byte[3];
-						sideInfo.ch[ch].gr[gr].table_select[0] = (byte) bS.getBits(5);
-						sideInfo.ch[ch].gr[gr].table_select[1] = (byte) bS.getBits(5);
-						sideInfo.ch[ch].gr[gr].table_select[2] = (byte) bS.getBits(5);
+						granule.table_select = new byte[3];
+						granule.table_select[0] = (byte)((granuleBits >>> 20) & 0x1F);
+						granule.table_select[1] = (byte)((granuleBits >>> 15) & 0x1F);
+						granule.table_select[2] = (byte)((granuleBits >>> 10) & 0x1F);
 						
 						//4 bit length
-						sideInfo.ch[ch].gr[gr].region0_count = (byte)bS.getBits(4);
+						granule.region0_count = (byte)((granuleBits >>> 6) & 0xF);
 						
 						//3 bit length
-						sideInfo.ch[ch].gr[gr].region1_count = (byte)bS.getBits(3);
+						granule.region1_count = (byte)((granuleBits >>> 3) & 0b111);
 					}
 					//1 bit length
-					sideInfo.ch[ch].gr[gr].preflag = (byte)bS.getBits(1);
+					granule.preflag = (byte)((granuleBits >>> 2) & 0b1);
 					
 					//1 bit length
-					sideInfo.ch[ch].gr[gr].scalfac_scale = (byte)bS.getBits(1);
+					granule.scalfac_scale = (byte)((granuleBits >>> 1) & 0b1);
 		
 					//1 bit length
-					sideInfo.ch[ch].gr[gr].count1table_select = (byte)bS.getBits(1);
+					granule.count1table_select = (byte)(granuleBits & 0b1);
 				}
 			}
 			
@@ -253,9 +259,8 @@ public class Frame {
 		try{
 			int length = bS.getEndPosition() - bS.getPosition();
 			this.mainData = new BitStream(null);
-			for(int i=0; i<length; i++){
-				mainData.addBit((byte)bS.getBits(1));
-			}
+			mainData.copyBits(bS, bS.getPosition(), length);
+			bS.resetStream(bS.getEndPosition());
 		}catch(BitStreamException e){
 			e.printStackTrace();
 		}
@@ -391,10 +396,7 @@ public class Frame {
 		}
 		
 		try{
-			mainData.resetStream();
-			for(int i=0; i<mainData.getEndPosition(); i++){
-				oS.addBit((byte)mainData.getBits(1));
-			}
+			oS.copyBits(mainData, 0, mainData.getEndPosition());
 		}catch(BitStreamException e){
 			e.printStackTrace();
 		}
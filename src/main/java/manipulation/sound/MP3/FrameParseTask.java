@@ -0,0 +1,47 @@
+package manipulation.sound.MP3;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>Fork/join task which parses a range of the frames found in a MP3 file.
+ *
+ * <p>The range is split in half until it holds no more than the minimum amount of
+ * frames, each remaining range then being parsed by the MP3Codec.
+ *
+ * @author Ashley Allott
+ */
+class FrameParseTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	private MP3Codec codec;
+	private int firstFrame;
+	private int lastFrame;
+	private int minimumFrames;
+
+	/**
+	 * <p>Constructor, creates a new task to parse a range of frames.
+	 *
+	 * @param codec			the MP3Codec which parses the frames
+	 * @param firstFrame	the first frame to parse
+	 * @param lastFrame		the frame after the last frame to parse
+	 * @param minimumFrames	the amount of frames below which the range is not split
+	 */
+	FrameParseTask(MP3Codec codec, int firstFrame, int lastFrame, int minimumFrames){
+		this.codec = codec;
+		this.firstFrame = firstFrame;
+		this.lastFrame = lastFrame;
+		this.minimumFrames = minimumFrames;
+	}
+
+	@Override
+	protected void compute(){
+		if(lastFrame - firstFrame <= minimumFrames){
+			codec.parseFrames(firstFrame, lastFrame);
+		}else{
+			int middle = (firstFrame + lastFrame) >>> 1;
+			invokeAll(new FrameParseTask(codec, firstFrame, middle, minimumFrames),
+					new FrameParseTask(codec, middle, lastFrame, minimumFrames));
+		}
+	}
+}
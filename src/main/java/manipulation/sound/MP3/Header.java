@@ -44,41 +44,52 @@ public class Header {
 	 */
 	public Header(byte[] headerBytes) throws Exception{
 		this.bS = new BitStream(headerBytes);
-		this.parseHeaderBlock();
+		this.parseHeaderBlock(bS.getBits(32));
 	}
 	
 	/**
-	 * <p>Reads the header bytes and gets the data.
+	 * <p>Constructor, creates a new Header object from the 32 header bits.
 	 * 
+	 * @param headerBits	integer containing the header bits, the first being the most significant
+	 */
+	public Header(int headerBits){
+		this.parseHeaderBlock(headerBits);
+	}
+	
+	/**
+	 * <p>Gets the data from the header bits.
+	 * 
+	 * <p>The 32 bit header is read at once, each field then being taken from it.
+	 * 
+	 * @param headerBits	integer containing the header bits
 	 * @return		the size of the frame (in bytes)
-	 * @throws Exception
 	 */
-	private int parseHeaderBlock() throws Exception{
-		sync = bS.getBits(11);
+	private int parseHeaderBlock(int headerBits){
+		sync = (headerBits >>> 21) & 0x7FF;
 		
-		versionID = (byte)bS.getBits(2);
+		versionID = (byte)((headerBits >>> 19) & 0b11);
 		
-		layerDesc = (byte)bS.getBits(2);
+		layerDesc = (byte)((headerBits >>> 17) & 0b11);
 		
-		protectionBit =  (byte)bS.getBits(1);
+		protectionBit = (byte)((headerBits >>> 16) & 0b1);
 
-		bitrateIndex =  (byte)bS.getBits(4);
+		bitrateIndex = (byte)((headerBits >>> 12) & 0b1111);
 
-		sRFIndex =  (byte)bS.getBits(2);
+		sRFIndex = (byte)((headerBits >>> 10) & 0b11);
 
-		paddingBit =  (byte)bS.getBits(1);
+		paddingBit = (byte)((headerBits >>> 9) & 0b1);
 
-		privateBit =  (byte)bS.getBits(1);
+		privateBit = (byte)((headerBits >>> 8) & 0b1);
 
-		channelMode =  (byte)bS.getBits(2);
+		channelMode = (byte)((headerBits >>> 6) & 0b11);
 		
-		modeExtension =  (byte)bS.getBits(2);
+		modeExtension = (byte)((headerBits >>> 4) & 0b11);
 
-		copyrightBit =  (byte)bS.getBits(1);
+		copyrightBit = (byte)((headerBits >>> 3) & 0b1);
 
-		originalBit =  (byte)bS.getBits(1);
+		originalBit = (byte)((headerBits >>> 2) & 0b1);
 
-		emphasis =  (byte)bS.getBits(2);
+		emphasis = (byte)(headerBits & 0b11);
 		
 		if(protectionBit == 0b0){
 			crc = true;
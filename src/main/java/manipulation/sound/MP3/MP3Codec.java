@@ -2,8 +2,8 @@ package manipulation.sound.MP3;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 import manipulation.BitStream;
 import manipulation.BitStreamException;
@@ -26,12 +26,40 @@ public class MP3Codec implements Codec{
 	public static final int LAYER_2 = (byte)0b10;
 	public static final int LAYER_1 = (byte)0b11;
 	
-	public BitStream mainData;
 	public int capacity;
 	public long length;
 	public long frameLength;
 	public byte[] id3;
 	
+	private static final int INITIAL_FRAMES = 64;
+	
+	public static final int PARALLEL_MIN_FRAMES = 1024;
+	
+	/**
+	 * <p>The amount of following frame headers a frame sync is checked against, when not 
+	 * directly following a frame.
+	 */
+	public static final int SYNC_CONFIRM_FRAMES = 3;
+	
+	//Largest frame, Layer II or III MPEG 1 at 384kbps and 32kHz with padding
+	static final int MAX_FRAME_SIZE = 1729;
+	
+	//The sync, version, layer and sample rate bits, the same in each frame of a file
+	private static final int CONSISTENT_HEADER_MASK = 0xFFFE0C00;
+	
+	private static final int ID3_HEADER_SIZE = 10;
+	private static final int ID3_FOOTER_FLAG = 0x10;
+	private boolean parallelParsing = true;
+	
+	//Frame index, holding the details of each frame in parallel arrays
+	private byte[] audioBytes;
+	private int frameCount;
+	private int[] frameOffsets;
+	private int[] frameSizes;
+	private byte[] channelModes;
+	private byte[] privateBitOffsets;
+	private byte[] privateBits;
+	
 	// bits, [v1,l1], [v1,l2], [v1,l3], [v2,l1], [v2,l2&l3]
 	public static final int[][] BITRATE_TABLE = {
 			{(byte)0b0000, 0,0,0,0,0},
@@ -60,98 +88,327 @@ public class MP3Codec implements Codec{
 			{(byte)0b11, -1, -1}
 	};
 	
-	public ArrayList<Frame> frameList;
-	
 	/**
 	 * <p>Constructor, creates a entry MP3Codec instance.
 	 */
 	public MP3Codec(){
 		length = 0;
 		capacity = 0;
-		frameList = new ArrayList<Frame>();
-		mainData = new BitStream(null);
+		frameCount = 0;
+		frameOffsets = new int[INITIAL_FRAMES];
+		frameSizes = new int[INITIAL_FRAMES];
+	}
+	
+	/**
+	 * <p>Sets whether the frames are parsed in parallel, once the frames have been found, 
+	 * each frame being independent of the others. Enabled by default.
+	 * 
+	 * @param parallelParsing	boolean value specifying if parallel parsing is used
+	 */
+	public void setParallelParsing(boolean parallelParsing){
+		this.parallelParsing = parallelParsing;
 	}
 	/**
 	 * {@inheritDoc}
 	 * 
 	 * <p>Reads a given MP3 byte array
+	 * 
+	 * <p>The frames are found first, only their headers being read, then each frame 
+	 * is parsed for the details needed for embedding (on the fork/join pool if parallel 
+	 * parsing is enabled and there are enough frames). {@link #getFrame(int)} creates 
+	 * a full frame when needed.
 	 */
 	public void decodeStream(byte[] audioBytes){
-		try{
-			if(true){
-				for(int i=0; i< audioBytes.length;){
-					if(audioBytes[i] == (byte)0b01001001 && 
-							audioBytes[i+1] == (byte)0b01000100 &&
-							audioBytes[i+2] == (byte)0b00110011){
-						//Found ID3 tag
+		this.audioBytes = audioBytes;
+		findFrames();
+		
+		channelModes = new byte[frameCount];
+		privateBitOffsets = new byte[frameCount];
+		privateBits = new byte[frameCount];
+		if(parallelParsing && frameCount > PARALLEL_MIN_FRAMES){
+			ForkJoinPool.commonPool().invoke(new FrameParseTask(this, 0, frameCount, PARALLEL_MIN_FRAMES));
+		}else{
+			parseFrames(0, frameCount);
+		}
+		calCapacity();
+	}
+	
+	/**
+	 * <p>Scans the audio bytes for frames in a single pass, a frame being added to the 
+	 * frame index when it is followed by another frame header or the end of the data.
+	 * 
+	 * <p>Any ID3v2 tags at the start are skipped using the size in their headers, unless 
+	 * the size passes the end of the data. A frame which does not directly follow another 
+	 * frame is only added when confirmed by the {@link #SYNC_CONFIRM_FRAMES} following 
+	 * frame headers, so a false sync within other data is not taken as a frame.
+	 * 
+	 * <p>Adds the length of each frame to the length of the MP3 file.
+	 */
+	private void findFrames(){
+		int i = 0;
+		int tagSize = getID3Size(audioBytes, i, audioBytes.length);
+		while(tagSize > 0 && i + tagSize <= audioBytes.length){
+			i += tagSize;
+			tagSize = getID3Size(audioBytes, i, audioBytes.length);
+		}
+		
+		boolean synced = false;
+		while(i + 4 <= audioBytes.length){
+			if(!isFrameSync(audioBytes, i, audioBytes.length)){
+				i++;
+				synced = false;
+				continue;
+			}
+			int frameStart = i;
+			int followingHeaders = synced ? 1 : SYNC_CONFIRM_FRAMES;
+			if(isConfirmedFrame(audioBytes, frameStart, audioBytes.length, followingHeaders)){
+				Header header = new Header(getHeaderBits(audioBytes, frameStart));
+				if(frameCount == 0){
+					if(frameStart != 0){
+						id3 = Arrays.copyOfRange(audioBytes, 0, frameStart);
 					}
-					if(audioBytes[i] == (byte)0xFF){
-						if(((audioBytes[i+1] >> 5) & 0b111) == (byte)0b111){
-							int frameStart = i;
-							
-							if(frameStart != 0){
-								if(id3 == null){
-									id3 = Arrays.copyOfRange(audioBytes, 0, i);
-								}
-							}
-							
-							byte[] headerBytes = null;
-							headerBytes = new byte[4];
-							for(int j=0; j<4; j++){
-								headerBytes[j] = audioBytes[i];
-								i++;
-							}
-							
-							Header header = new Header(headerBytes);
-							int frameLength = header.frameSize;
-							
-							int j = i + (frameLength-headerBytes.length);
-							
-							byte[] dataBytes;
-							boolean temp = false;
-							if((frameLength-headerBytes.length) > 0){
-								dataBytes = new byte[(frameLength-headerBytes.length)];
-								for(int x=i; x<i + (frameLength-headerBytes.length); x++){
-									if(!temp){
-										temp = true;
-									}
-									dataBytes[x-(i)] = audioBytes[x];
-								}
-							}else{
-								dataBytes = new byte[0];
-							}
-							
-							if(j != frameStart && j > 0){
-								if(j == audioBytes.length){
-									Frame curFrame = new Frame(header, dataBytes, mainData);
-									frameList.add(curFrame);
-									mainData.addBytes(Arrays.copyOfRange(dataBytes, curFrame.sideInfoLength, dataBytes.length));
-									break;
-								}else{
-									if((audioBytes[j] == (byte)0xFF) && (((audioBytes[j+1] >> 5) & 0b111) == (byte)0b111)){
-										Frame curFrame = new Frame(header, dataBytes, mainData);
-										frameList.add(curFrame);
-										mainData.addBytes(Arrays.copyOfRange(dataBytes, curFrame.sideInfoLength, dataBytes.length));
-										
-										i = j;
-									}
-								}
-							}else{
-								i++;
-							}
-						}else{
-							i++;
-						}
-					}else{
-						i++;
-					}		
+					frameLength = header.length;
 				}
+				addFrame(frameStart, header.frameSize);
+				length = length + header.length;
+				i = frameStart + header.frameSize;
+				synced = true;
+			}else{
+				i++;
+				synced = false;
 			}
-		}catch(Exception e){
-			e.printStackTrace();
 		}
-		calCapacity();
-		calLength();
+	}
+	
+	/**
+	 * <p>Gets the size of an ID3v2 tag starting at an index, including its header and 
+	 * any footer, the size in the header being a 28 bit syncsafe integer.
+	 * 
+	 * @param bytes		the byte array to check
+	 * @param index		the index of the possible tag
+	 * @param end		the index after the last byte of data
+	 * @return			the size of the tag, or 0 if there is no tag at the index
+	 */
+	static int getID3Size(byte[] bytes, int index, int end){
+		if(index + ID3_HEADER_SIZE > end){
+			return 0;
+		}
+		if(bytes[index] != 'I' || bytes[index+1] != 'D' || bytes[index+2] != '3' || 
+				bytes[index+3] == (byte)0xFF || bytes[index+4] == (byte)0xFF){
+			return 0;
+		}
+		int size = 0;
+		for(int i=6; i<10; i++){
+			if((bytes[index+i] & 0x80) != 0){
+				return 0;
+			}
+			size = (size << 7) | bytes[index+i];
+		}
+		size += ID3_HEADER_SIZE;
+		if((bytes[index+5] & ID3_FOOTER_FLAG) != 0){
+			size += ID3_HEADER_SIZE;
+		}
+		return size;
+	}
+	
+	/**
+	 * <p>Checks if the frame header at an index starts a frame, the frame needing to be 
+	 * followed by a number of frame headers, or the end of the data.
+	 * 
+	 * <p>When checking more than one following header, each header must have the same 
+	 * version, layer and sample rate as the first.
+	 * 
+	 * @param bytes				the byte array containing the frame
+	 * @param offset			the index of the frame's first header byte
+	 * @param end				the index after the last byte of data
+	 * @param followingHeaders	the amount of following frame headers to check
+	 * @return					boolean value indicating if the frame is confirmed
+	 */
+	static boolean isConfirmedFrame(byte[] bytes, int offset, int end, int followingHeaders){
+		int headerBits = getHeaderBits(bytes, offset);
+		int frameSize = new Header(headerBits).frameSize;
+		int position = offset;
+		for(int i=0; i<followingHeaders; i++){
+			if(frameSize <= 4 || position + frameSize > end){
+				return false;
+			}
+			position += frameSize;
+			if(position == end){
+				return true;
+			}
+			if(!isFrameSync(bytes, position, end)){
+				return false;
+			}
+			if(i + 1 < followingHeaders){
+				if(position + 4 > end){
+					return true;
+				}
+				int nextBits = getHeaderBits(bytes, position);
+				if((nextBits & CONSISTENT_HEADER_MASK) != (headerBits & CONSISTENT_HEADER_MASK)){
+					return false;
+				}
+				frameSize = new Header(nextBits).frameSize;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * <p>Gets the 32 header bits of a frame.
+	 * 
+	 * @param bytes		the byte array containing the frame
+	 * @param offset	the index of the frame's first header byte
+	 * @return			integer containing the header bits
+	 */
+	static int getHeaderBits(byte[] bytes, int offset){
+		return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset+1] & 0xFF) << 16) | 
+				((bytes[offset+2] & 0xFF) << 8) | (bytes[offset+3] & 0xFF);
+	}
+	
+	/**
+	 * <p>Checks if a frame header starts at an index, being 0xFF followed by 3 set bits.
+	 * 
+	 * @param bytes	the byte array to check
+	 * @param index	the index of the possible header
+	 * @param end	the index after the last byte of data
+	 * @return		boolean value indicating if the bytes are a frame sync
+	 */
+	static boolean isFrameSync(byte[] bytes, int index, int end){
+		if(index + 1 >= end){
+			return false;
+		}
+		return bytes[index] == (byte)0xFF && ((bytes[index+1] >> 5) & 0b111) == (byte)0b111;
+	}
+	
+	/**
+	 * <p>Adds a frame to the frame index, growing the index as needed.
+	 * 
+	 * @param offset	the index of the frame's first header byte
+	 * @param size		the size of the frame, in bytes
+	 */
+	private void addFrame(int offset, int size){
+		if(frameCount == frameOffsets.length){
+			frameOffsets = Arrays.copyOf(frameOffsets, frameOffsets.length * 2);
+			frameSizes = Arrays.copyOf(frameSizes, frameSizes.length * 2);
+		}
+		frameOffsets[frameCount] = offset;
+		frameSizes[frameCount] = size;
+		frameCount++;
+	}
+	
+	/**
+	 * <p>Parses a range of the found frames, getting the channel mode and private bits of 
+	 * each frame. Used by the parallel parser, each frame being independent.
+	 * 
+	 * <p>A frame too short to hold its side info has no private bits, its private bit 
+	 * offset being 0.
+	 * 
+	 * @param firstFrame	the first frame to parse
+	 * @param lastFrame		the frame after the last frame to parse
+	 */
+	void parseFrames(int firstFrame, int lastFrame){
+		for(int i=firstFrame; i<lastFrame; i++){
+			Header header = new Header(getHeaderBits(audioBytes, frameOffsets[i]));
+			channelModes[i] = header.channelMode;
+			privateBitOffsets[i] = (byte)getPrivateBitOffset(header);
+			if(privateBitOffsets[i] != 0){
+				long position = ((long)frameOffsets[i] * 8) + privateBitOffsets[i];
+				privateBits[i] = (byte)readBits(audioBytes, position, getPrivateLength(header.channelMode));
+			}
+		}
+	}
+	
+	/**
+	 * <p>Gets the bit offset of the private bits from the start of a frame, the private 
+	 * bits following the 9 bit main data begin of the side info.
+	 * 
+	 * @param header	the header of the frame
+	 * @return			the offset of the private bits, or 0 if the frame is too short to hold its side info
+	 */
+	static int getPrivateBitOffset(Header header){
+		int sideInfoOffset = 4;
+		if(header.crc){
+			sideInfoOffset += 2;
+		}
+		if(sideInfoOffset + getSideInfoSize(header.channelMode) > header.frameSize){
+			return 0;
+		}
+		return (sideInfoOffset * 8) + 9;
+	}
+	
+	/**
+	 * <p>Calculates the embedding capacity of the MP3 file
+	 */
+	private void calCapacity(){
+		for(int i=0; i<frameCount; i++){
+			if(privateBitOffsets[i] != 0){
+				capacity = capacity + getPrivateLength(channelModes[i]);
+			}
+		}
+	}
+	
+	/**
+	 * <p>Gets the amount of private bits in a frame, for a given channel mode.
+	 * 
+	 * @param channelMode	the channel mode of the frame
+	 * @return				the amount of private bits
+	 */
+	static int getPrivateLength(byte channelMode){
+		if(channelMode == Header.CHANNEL_MODE_SINGLE_CHANNEL){
+			//5bits
+			return 5;
+		}else{
+			//3bits
+			return 3;
+		}
+	}
+	
+	/**
+	 * <p>Gets the size of the side info of a frame, for a given channel mode.
+	 * 
+	 * @param channelMode	the channel mode of the frame
+	 * @return				the size of the side info, in bytes
+	 */
+	static int getSideInfoSize(byte channelMode){
+		int channels;
+		if(channelMode == Header.CHANNEL_MODE_SINGLE_CHANNEL){
+			channels = 1;
+		}else{
+			channels = 2;
+		}
+		//The fields before the granules, and 59 bits per granule
+		return (9 + getPrivateLength(channelMode) + (4 * channels) + (2 * channels * 59)) / 8;
+	}
+	
+	/**
+	 * <p>Gets the number of frames in the MP3 file.
+	 * 
+	 * @return	the number of frames
+	 */
+	public int getFrameCount(){
+		return frameCount;
+	}
+	
+	/**
+	 * <p>Creates the full frame at an index of the frame index, with the private bits 
+	 * currently held for it.
+	 * 
+	 * <p>The private bits are written into a copy of the frame, and its CRC recalculated, 
+	 * before the frame is parsed, so the frame matches the frame output by genStego.
+	 * 
+	 * @param index	the index of the frame
+	 * @return		the frame
+	 * @throws Exception
+	 */
+	public Frame getFrame(int index) throws Exception{
+		int offset = frameOffsets[index];
+		byte[] frameBytes = Arrays.copyOfRange(audioBytes, offset, offset + frameSizes[index]);
+		if(privateBitOffsets[index] != 0){
+			writeBits(frameBytes, privateBitOffsets[index], privateBits[index], getPrivateLength(channelModes[index]));
+			updateCRC(frameBytes, 0, channelModes[index]);
+		}
+		Header header = new Header(Arrays.copyOfRange(frameBytes, 0, 4));
+		return new Frame(header, Arrays.copyOfRange(frameBytes, 4, frameBytes.length));
 	}
 	
 	/**
@@ -161,20 +418,9 @@ public class MP3Codec implements Codec{
 	 */
 	private byte[] getEmbeddedData(){
 		BitStream bS = new BitStream(null);
-		for(int i=0 ;i<frameList.size(); i++){
-			Frame curFrame = frameList.get(i);
-			if(curFrame.header.channelMode == Header.CHANNEL_MODE_SINGLE_CHANNEL){
-				//5bits
-				for(int j=0; j<5; j++){
-					byte curBit = (byte)((curFrame.sideInfo.privateBits >> (4-j)) & 0b1);
-					bS.addBit(curBit);
-				}
-			}else{
-				//3bits
-				for(int j=0; j<3; j++){
-					byte curBit = (byte)((curFrame.sideInfo.privateBits >> (2-j)) & 0b1);
-					bS.addBit(curBit);
-				}
+		for(int i=0 ;i<frameCount; i++){
+			if(privateBitOffsets[i] != 0){
+				bS.addBits(privateBits[i], getPrivateLength(channelModes[i]));
 			}
 		}
 		byte[] recoveredData = bS.getData();
@@ -188,25 +434,16 @@ public class MP3Codec implements Codec{
 	 * @throws BitStreamException
 	 */
 	private void embedData(BitStream bS) throws BitStreamException{
-		for(int i=0 ;i<frameList.size(); i++){
-			Frame curFrame = frameList.get(i);
-			if(curFrame.header.channelMode == Header.CHANNEL_MODE_SINGLE_CHANNEL){
-				//5bits
-				curFrame.sideInfo.privateBits = (byte)0;
-				for(int j=0; j<5; j++){
-					if(!bS.isEndOfData()){
-						byte curBit = (byte)((bS.getBits(1)) << (4-j));
-						curFrame.sideInfo.privateBits = (byte) (curFrame.sideInfo.privateBits | curBit);
-					}
-				}
-			}else{
-				//3bits
-				curFrame.sideInfo.privateBits = (byte)0;
-				for(int j=0; j<3; j++){
-					if(!bS.isEndOfData()){
-						byte curBit = (byte)((bS.getBits(1)) << (2-j));
-						curFrame.sideInfo.privateBits = (byte) (curFrame.sideInfo.privateBits | curBit);
-					}
+		for(int i=0 ;i<frameCount; i++){
+			if(privateBitOffsets[i] == 0){
+				continue;
+			}
+			int privateLength = getPrivateLength(channelModes[i]);
+			privateBits[i] = (byte)0;
+			for(int j=0; j<privateLength; j++){
+				if(!bS.isEndOfData()){
+					byte curBit = (byte)((bS.getBits(1)) << (privateLength-1-j));
+					privateBits[i] = (byte) (privateBits[i] | curBit);
 				}
 			}
 		}
@@ -264,53 +501,119 @@ public class MP3Codec implements Codec{
 	}
 	
 	/**
-	 * <p>Calculates the time duration of the MP3 file. 
+	 * <p>Gets the embedding capacity of the MP3 file in bytes.
+	 * 
+	 * @return	the capacity, in bytes, of the MP3 file
 	 */
-	private void calLength(){
-		for(int i=0 ;i<frameList.size(); i++){
-			Frame curFrame = frameList.get(i);
-			length = length + curFrame.header.length;
-		}
-		frameLength = frameList.get(0).header.length;
+	public int getCapacity(){
+		int avaiableDataSize = (capacity) / (8);
+		return avaiableDataSize;
 	}
 	
 	/**
-	 * <p>Calculates the embedding capacity of the MP3 file
+	 * {@inheritDoc}
+	 * 
+	 * <p>Converts the MP3 into a byte array format.
+	 * 
+	 * <p>The original audio bytes are copied, keeping the ID3 tag and any other data 
+	 * between the frames, and the private bits of each frame are written in place 
+	 * using the frame index. The CRC of a frame is recalculated when its header 
+	 * specifies one.
 	 */
-	private void calCapacity(){
-		for(int i=0 ;i<frameList.size(); i++){
-			Frame curFrame = frameList.get(i);
-			if(curFrame.header.channelMode == Header.CHANNEL_MODE_SINGLE_CHANNEL){
-				//5bits
-				capacity = capacity + 5;
-			}else{
-				//3bits
-				capacity = capacity + 3;
+	public byte[] genStego(){
+		byte[] newBytes = audioBytes.clone();
+		for(int i=0; i<frameCount; i++){
+			if(privateBitOffsets[i] == 0){
+				continue;
 			}
+			int offset = frameOffsets[i];
+			writeBits(newBytes, ((long)offset * 8) + privateBitOffsets[i], privateBits[i], getPrivateLength(channelModes[i]));
+			updateCRC(newBytes, offset, channelModes[i]);
 		}
+		return newBytes;
 	}
 	
 	/**
-	 * <p>Gets the embedding capacity of the MP3 file in bytes.
+	 * <p>Recalculates the CRC of a frame in place, when its header specifies one (the 
+	 * protection bit being cleared).
 	 * 
-	 * @return	the capacity, in bytes, of the MP3 file
+	 * @param bytes			the byte array containing the frame
+	 * @param offset		the index of the frame's first header byte
+	 * @param channelMode	the channel mode of the frame
 	 */
-	public int getCapacity(){
-		int avaiableDataSize = (capacity) / (8);
-		return avaiableDataSize;
+	static void updateCRC(byte[] bytes, int offset, byte channelMode){
+		if((bytes[offset + 1] & 0b1) == 0){
+			int crc = calCRC(bytes, offset + 2, 2, 0xFFFF);
+			crc = calCRC(bytes, offset + 6, getSideInfoSize(channelMode), crc);
+			bytes[offset + 4] = (byte)(crc >> 8);
+			bytes[offset + 5] = (byte)crc;
+		}
 	}
 	
 	/**
-	 * {@inheritDoc}
+	 * <p>Reads a specified number of bits from a byte array, at a given bit position.
 	 * 
-	 * <p>Converts the MP3 into a byte array format.
+	 * @param bytes			the byte array to read the bits from
+	 * @param position		the bit position of the first bit
+	 * @param numberOfBits	the amount of bits to read
+	 * @return				integer value containing the bits, in its rightmost bits
 	 */
-	public byte[] genStego(){
-		byte[] newBytes = new byte[0];
-		for(int i=0; i<frameList.size(); i++){
-			newBytes = Utils.joinByteArray(newBytes, Utils.stringToByte(frameList.get(i).output().toString()));
+	static int readBits(byte[] bytes, long position, int numberOfBits){
+		int value = 0;
+		for(int i=0; i<numberOfBits; i++){
+			long bitPosition = position + i;
+			value = (value << 1) | ((bytes[(int)(bitPosition / 8)] >> (7 - (int)(bitPosition % 8))) & 0b1);
 		}
-		return newBytes;
+		return value;
+	}
+	
+	/**
+	 * <p>Writes a specified number of bits into a byte array, at a given bit position.
+	 * 
+	 * @param bytes			the byte array to write the bits into
+	 * @param position		the bit position to write the first bit at
+	 * @param value			value containing the bits, in its rightmost bits
+	 * @param numberOfBits	the amount of bits to write
+	 */
+	static void writeBits(byte[] bytes, long position, int value, int numberOfBits){
+		for(int i=0; i<numberOfBits; i++){
+			long bitPosition = position + i;
+			int index = (int)(bitPosition / 8);
+			int mask = 0b1 << (7 - (int)(bitPosition % 8));
+			if(((value >> (numberOfBits - 1 - i)) & 0b1) == 0b1){
+				bytes[index] = (byte)(bytes[index] | mask);
+			}else{
+				bytes[index] = (byte)(bytes[index] & ~mask);
+			}
+		}
+	}
+	
+	/**
+	 * <p>Calculates the CRC-16 of a range of bytes, as used by MP3 frames (polynomial 
+	 * 0x8005, most significant bit first).
+	 * 
+	 * <p>A frame's CRC covers the last two bytes of its header and its side info, 
+	 * starting from 0xFFFF.
+	 * 
+	 * @param bytes		the byte array containing the range
+	 * @param offset	the index of the first byte of the range
+	 * @param length	the amount of bytes in the range
+	 * @param crc		the CRC of the preceding data, or the initial value
+	 * @return			the 16 bit CRC
+	 */
+	public static int calCRC(byte[] bytes, int offset, int length, int crc){
+		for(int i=offset; i<offset + length; i++){
+			crc = crc ^ ((bytes[i] & 0xFF) << 8);
+			for(int j=0; j<8; j++){
+				if((crc & 0x8000) != 0){
+					crc = (crc << 1) ^ 0x8005;
+				}else{
+					crc = crc << 1;
+				}
+			}
+			crc = crc & 0xFFFF;
+		}
+		return crc;
 	}
 	
 	/**
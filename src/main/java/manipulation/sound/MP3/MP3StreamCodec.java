@@ -0,0 +1,267 @@
+package manipulation.sound.MP3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import manipulation.BitStream;
+import manipulation.MessageTooLargeException;
+import manipulation.Utils;
+
+/**
+ * <p>Class used to embed and recover hidden messages in MP3 files as they are streamed,
+ * without holding the whole file in memory.
+ *
+ * <p>Frames are found in the same way as {@link MP3Codec}, each frame being read into a
+ * buffer, its private bits rewritten (and its CRC recalculated) and the frame written
+ * to the output along with any data between the frames. The buffer only grows to hold
+ * the largest frame, so memory use does not depend on the size of the file.
+ *
+ * <p>This is a library entry point, the GUI still holding the whole file in a {@link manipulation.WorkFile}
+ * to play the stegotext and show the capacity before embedding.
+ *
+ * @author Ashley Allott
+ */
+public class MP3StreamCodec {
+
+	private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+	private InputStream in;
+	private OutputStream out;
+
+	private byte[] buffer;
+	private int position;
+	private int limit;
+	private int written;
+	private boolean endOfStream;
+
+	private Header frameHeader;
+	private int frameStart;
+	private boolean started;
+	private boolean synced;
+
+	/**
+	 * <p>Constructor, creates a new MP3StreamCodec reading from a stream, and writing
+	 * to a stream when embedding.
+	 *
+	 * @param in	the input stream containing the MP3 file
+	 * @param out	the output stream to write the stego MP3 file to, or null when recovering
+	 */
+	public MP3StreamCodec(InputStream in, OutputStream out){
+		this.in = in;
+		this.out = out;
+		this.buffer = new byte[INITIAL_BUFFER_SIZE];
+		this.position = 0;
+		this.limit = 0;
+		this.written = 0;
+		this.endOfStream = false;
+		this.started = false;
+		this.synced = false;
+	}
+
+	/**
+	 * <p>Constructor, creates a new MP3StreamCodec reading from a channel, and writing
+	 * to a channel when embedding.
+	 *
+	 * @param in	the channel containing the MP3 file
+	 * @param out	the channel to write the stego MP3 file to, or null when recovering
+	 */
+	public MP3StreamCodec(ReadableByteChannel in, WritableByteChannel out){
+		this(Channels.newInputStream(in), (out != null) ? Channels.newOutputStream(out) : null);
+	}
+
+	/**
+	 * <p>Embeds a message in the private bits of the frames, writing the stego MP3 file
+	 * to the output as the frames are read.
+	 *
+	 * <p>The message is preceded by its length, as with {@link MP3Codec#encode_msg(byte[], String, int)},
+	 * the private bits of the frames after the message being cleared.
+	 *
+	 * @param message	the message to be hidden
+	 * @throws IOException
+	 * @throws MessageTooLargeException	if the file ended before the whole message was embedded,
+	 * the output then being written without the end of the message
+	 */
+	public void embed(byte[] message) throws IOException, MessageTooLargeException{
+		byte[] payload = Utils.joinByteArray(Utils.intToByteArray(message.length), message);
+		long payloadBits = (long)payload.length * 8;
+		long cursor = 0;
+
+		while(nextFrame()){
+			int privateBitOffset = MP3Codec.getPrivateBitOffset(frameHeader);
+			if(privateBitOffset == 0){
+				continue;
+			}
+			int privateLength = MP3Codec.getPrivateLength(frameHeader.channelMode);
+			int available = (int)Math.min(privateLength, payloadBits - cursor);
+			int privateBits = MP3Codec.readBits(payload, cursor, available) << (privateLength - available);
+			cursor += available;
+
+			MP3Codec.writeBits(buffer, ((long)frameStart * 8) + privateBitOffset, privateBits, privateLength);
+			MP3Codec.updateCRC(buffer, frameStart, frameHeader.channelMode);
+		}
+
+		//Write the remaining bytes, too few to hold a frame
+		position = limit;
+		flush();
+		out.flush();
+
+		if(cursor < payloadBits){
+			throw new MessageTooLargeException("Message Too Large");
+		}
+	}
+
+	/**
+	 * <p>Recovers a message from the private bits of the frames, reading only as many
+	 * frames as the message needs.
+	 *
+	 * @return		byte array containing the recovered message
+	 * @throws IOException	if the file ended before the whole message was recovered
+	 */
+	public byte[] extract() throws IOException{
+		BitStream recoveredBits = new BitStream(null);
+		long messageBits = -1;
+
+		while(nextFrame()){
+			int privateBitOffset = MP3Codec.getPrivateBitOffset(frameHeader);
+			if(privateBitOffset == 0){
+				continue;
+			}
+			int privateLength = MP3Codec.getPrivateLength(frameHeader.channelMode);
+			recoveredBits.addBits(MP3Codec.readBits(buffer, ((long)frameStart * 8) + privateBitOffset, privateLength), privateLength);
+
+			//The message length is held in the first 32 bits
+			if(messageBits < 0 && recoveredBits.getEndPosition() >= 32){
+				ByteBuffer b = ByteBuffer.wrap(recoveredBits.getData(), 0, 4);
+				b.order(ByteOrder.BIG_ENDIAN);
+				int messageLength = b.getInt();
+				if(messageLength < 0){
+					throw new IOException("Invalid message length: " + messageLength);
+				}
+				messageBits = 32 + ((long)messageLength * 8);
+			}
+			if(messageBits >= 0 && recoveredBits.getEndPosition() >= messageBits){
+				return Arrays.copyOfRange(recoveredBits.getData(), 4, (int)(messageBits / 8));
+			}
+		}
+		throw new IOException("Reached end of stream before the message was recovered");
+	}
+
+	/**
+	 * <p>Moves to the next frame, passing over any data before it, and any ID3v2 tags
+	 * at the start of the stream.
+	 *
+	 * <p>A frame is found when its header is followed by another frame header or the
+	 * end of the stream, or by {@link MP3Codec#SYNC_CONFIRM_FRAMES} frame headers when
+	 * it does not directly follow a frame. The frame is then held in the buffer from the
+	 * frame start until the next call.
+	 *
+	 * @return		boolean value indicating if a frame was found, false when the end of the stream is reached
+	 * @throws IOException
+	 */
+	private boolean nextFrame() throws IOException{
+		if(!started){
+			started = true;
+			fill(10);
+			int tagSize = MP3Codec.getID3Size(buffer, position, limit);
+			while(tagSize > 0){
+				skip(tagSize);
+				fill(10);
+				tagSize = MP3Codec.getID3Size(buffer, position, limit);
+			}
+		}
+		while(fill(4)){
+			if(!MP3Codec.isFrameSync(buffer, position, limit)){
+				position++;
+				synced = false;
+				continue;
+			}
+			int followingHeaders = synced ? 1 : MP3Codec.SYNC_CONFIRM_FRAMES;
+			if(synced){
+				fill(new Header(MP3Codec.getHeaderBits(buffer, position)).frameSize + 2);
+			}else{
+				fill((MP3Codec.SYNC_CONFIRM_FRAMES * MP3Codec.MAX_FRAME_SIZE) + 4);
+			}
+			if(MP3Codec.isConfirmedFrame(buffer, position, limit, followingHeaders)){
+				frameHeader = new Header(MP3Codec.getHeaderBits(buffer, position));
+				frameStart = position;
+				position += frameHeader.frameSize;
+				synced = true;
+				return true;
+			}
+			position++;
+			synced = false;
+		}
+		return false;
+	}
+
+	/**
+	 * <p>Moves past a number of bytes, which are written to the output unchanged.
+	 *
+	 * @param numberOfBytes	the amount of bytes to move past
+	 * @throws IOException
+	 */
+	private void skip(int numberOfBytes) throws IOException{
+		int remaining = numberOfBytes;
+		while(remaining > 0 && fill(1)){
+			int step = Math.min(remaining, limit - position);
+			position += step;
+			remaining -= step;
+		}
+	}
+
+	/**
+	 * <p>Fills the buffer so it holds a number of bytes from the current position, if
+	 * the stream has them.
+	 *
+	 * <p>When the bytes would pass the end of the buffer, the bytes before the current
+	 * position are written out and the rest moved to the start of the buffer, the buffer
+	 * growing if it is too small.
+	 *
+	 * @param numberOfBytes	the amount of bytes needed
+	 * @return				boolean value indicating if the bytes are held
+	 * @throws IOException
+	 */
+	private boolean fill(int numberOfBytes) throws IOException{
+		if(limit - position >= numberOfBytes){
+			return true;
+		}
+		if(position + numberOfBytes > buffer.length){
+			flush();
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+			written = 0;
+			if(numberOfBytes > buffer.length){
+				buffer = Arrays.copyOf(buffer, Math.max(numberOfBytes, buffer.length * 2));
+			}
+		}
+		while(limit - position < numberOfBytes && !endOfStream){
+			int read = in.read(buffer, limit, buffer.length - limit);
+			if(read < 0){
+				endOfStream = true;
+			}else{
+				limit += read;
+			}
+		}
+		return limit - position >= numberOfBytes;
+	}
+
+	/**
+	 * <p>Writes the bytes before the current position to the output, if there is one.
+	 *
+	 * @throws IOException
+	 */
+	private void flush() throws IOException{
+		if(out != null && position > written){
+			out.write(buffer, written, position - written);
+		}
+		written = position;
+	}
+}
@@ -0,0 +1,38 @@
+package stegongraphyToolTests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import manipulation.image.JPEG.Huffman;
+
+/**
+ * <p>Class for performing JUnit tests checking the generation of optimal
+ * Huffman tables from symbol frequencies.
+ * 
+ * @author Ashley Allott
+ */
+public class TestHuffman {
+	
+	@Test
+	public void testA_emptyHistogram() throws Exception {
+		Huffman huffman = new Huffman((short)0, (short)0, new long[256]);
+		
+		assertEquals(0, huffman.symbolLengths.size());
+		assertEquals(17, huffman.genDHTBytes().length);
+		assertTrue(huffman.checkSpace());
+		assertEquals(1, huffman.addNewSymbol((byte)0x00).length());
+	}
+	
+	@Test
+	public void testB_singleSymbol() throws Exception {
+		long[] frequencies = new long[256];
+		frequencies[0x05] = 100;
+		Huffman huffman = new Huffman((short)0, (short)0, frequencies);
+		
+		assertEquals(1, huffman.symbolLengths.size());
+		assertEquals(1, huffman.getCodeLength((byte)0x05));
+		assertEquals("0", huffman.getCode((byte)0x05));
+	}
+}
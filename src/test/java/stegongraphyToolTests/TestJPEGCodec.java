@@ -0,0 +1,105 @@
+package stegongraphyToolTests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import manipulation.image.JPEG.JPEGCodec;
+
+/**
+ * <p>Class for performing JUnit tests checking the JPEG codec produces the same
+ * stegotext however the scan is decoded and encoded.
+ * 
+ * <p>Tests are performed on 'test/giraffe.jpg', and on a copy of it generated
+ * with restart intervals.
+ * 
+ * @author Ashley Allott
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestJPEGCodec {
+	
+	private static final byte[] MESSAGE = "JPEG codec test message".getBytes();
+	
+	@Test
+	public void testA_incrementalMatchesFullEncoding() throws Exception {
+		byte[] cover = Files.readAllBytes(Paths.get("test", "giraffe.jpg"));
+		for(int degradation: new int[]{1, 2, 16}){
+			byte[] full = embed(cover, false, true, degradation);
+			byte[] incremental = embed(cover, true, true, degradation);
+			
+			assertArrayEquals(full, incremental);
+			assertArrayEquals(MESSAGE, recover(incremental));
+		}
+	}
+	
+	@Test
+	public void testB_restartIntervalDecoding() throws Exception {
+		JPEGCodec codec = new JPEGCodec();
+		codec.decodeStream(Files.readAllBytes(Paths.get("test", "giraffe.jpg")));
+		codec.setOutputRestartInterval(4);
+		byte[] cover = codec.genStego();
+		assertTrue(hasMarker(cover, JPEGCodec.MARKER_TYPE_DRI));
+		assertTrue(hasMarker(cover, JPEGCodec.MARKER_TYPE_RST_START));
+		
+		byte[] serial = embed(cover, false, false, 2);
+		byte[] parallel = embed(cover, false, true, 2);
+		
+		assertArrayEquals(serial, parallel);
+		assertArrayEquals(serial, embed(cover, true, true, 2));
+		assertArrayEquals(MESSAGE, recover(parallel));
+	}
+	
+	/**
+	 * <p>Embeds the test message in a cover JPEG.
+	 * 
+	 * @param cover			the cover JPEG
+	 * @param incremental	boolean value specifying if incremental encoding is used
+	 * @param parallel		boolean value specifying if parallel decoding is used
+	 * @param degradation	the amount of AC coefficients used for the message
+	 * @return				the stego JPEG
+	 * @throws Exception
+	 */
+	private static byte[] embed(byte[] cover, boolean incremental, boolean parallel, int degradation) throws Exception{
+		JPEGCodec codec = new JPEGCodec();
+		codec.setIncrementalEncoding(incremental);
+		codec.setParallelDecoding(parallel);
+		codec.decodeStream(cover);
+		codec.encode_msg(MESSAGE, "", degradation);
+		return codec.genStego();
+	}
+	
+	/**
+	 * <p>Recovers the message from a stego JPEG.
+	 * 
+	 * @param stego	the stego JPEG
+	 * @return		the recovered message
+	 * @throws Exception
+	 */
+	private static byte[] recover(byte[] stego) throws Exception{
+		JPEGCodec codec = new JPEGCodec();
+		codec.decodeStream(stego);
+		return codec.decode_msg("");
+	}
+	
+	/**
+	 * <p>Checks if a JPEG contains a marker.
+	 * 
+	 * @param jpeg		the JPEG bytes
+	 * @param marker	the type of marker
+	 * @return			boolean value indicating if the marker is present
+	 */
+	private static boolean hasMarker(byte[] jpeg, byte marker){
+		for(int i=0; i<jpeg.length-1; i++){
+			if(jpeg[i] == (byte)0xFF && jpeg[i+1] == marker){
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,145 @@
+package stegongraphyToolTests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import manipulation.sound.MP3.MP3Codec;
+
+/**
+ * <p>Class for performing JUnit tests checking the MP3 codec's handling of frames, 
+ * on MP3 files generated by {@link Utils#genMP3(int, boolean, long)}.
+ * 
+ * @author Ashley Allott
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestMP3Codec {
+	
+	private static final byte[] MESSAGE = "MP3 codec test message".getBytes();
+	
+	@Test
+	public void testA_calculateCRC() {
+		//The CRC-16 check value, of the ASCII digits 1 to 9
+		assertEquals(0xAEE7, MP3Codec.calCRC("123456789".getBytes(), 0, 9, 0xFFFF));
+	}
+	
+	@Test
+	public void testB_updateCRC() throws Exception {
+		byte[] cover = Utils.genMP3(200, true, 1);
+		MP3Codec codec = new MP3Codec();
+		codec.decodeStream(cover);
+		assertArrayEquals(cover, codec.genStego());
+		
+		codec.encode_msg(MESSAGE, "", 0);
+		byte[] stego = codec.genStego();
+		
+		int changedFrames = 0;
+		for(int offset=0; offset<stego.length; offset+=Utils.MP3_FRAME_SIZE){
+			int crc = MP3Codec.calCRC(stego, offset + 2, 2, 0xFFFF);
+			crc = MP3Codec.calCRC(stego, offset + 6, Utils.MP3_SIDE_INFO_SIZE, crc);
+			assertEquals(crc, ((stego[offset+4] & 0xFF) << 8) | (stego[offset+5] & 0xFF));
+			if(stego[offset+4] != cover[offset+4] || stego[offset+5] != cover[offset+5]){
+				changedFrames++;
+			}
+		}
+		assertTrue(changedFrames > 0);
+		
+		MP3Codec recovered = new MP3Codec();
+		recovered.decodeStream(stego);
+		assertArrayEquals(MESSAGE, recovered.decode_msg(""));
+		for(int i=0; i<codec.getFrameCount(); i++){
+			int offset = i * Utils.MP3_FRAME_SIZE;
+			assertArrayEquals(Arrays.copyOfRange(stego, offset + 4, offset + 6), codec.getFrame(i).crc);
+		}
+	}
+	
+	@Test
+	public void testC_skipID3Tag() throws Exception {
+		for(boolean footer: new boolean[]{false, true}){
+			byte[] tag = genID3Tag(2000, footer);
+			byte[] cover = join(tag, Utils.genMP3(200, false, 2));
+			MP3Codec codec = new MP3Codec();
+			codec.decodeStream(cover);
+			
+			assertEquals(200, codec.getFrameCount());
+			assertArrayEquals(tag, codec.id3);
+			
+			codec.encode_msg(MESSAGE, "", 0);
+			byte[] stego = codec.genStego();
+			assertArrayEquals(tag, Arrays.copyOf(stego, tag.length));
+			
+			MP3Codec recovered = new MP3Codec();
+			recovered.decodeStream(stego);
+			assertArrayEquals(MESSAGE, recovered.decode_msg(""));
+		}
+	}
+	
+	@Test
+	public void testD_confirmFrameSync() throws Exception {
+		//Data before the first frame holding a frame header followed by only one other
+		byte[] data = new byte[1200];
+		for(int i=0; i<2*Utils.MP3_FRAME_SIZE; i+=Utils.MP3_FRAME_SIZE){
+			data[i] = (byte)0xFF;
+			data[i+1] = (byte)0xFB;
+			data[i+2] = (byte)0x90;
+			data[i+3] = (byte)0x40;
+		}
+		byte[] cover = join(data, Utils.genMP3(200, false, 3));
+		MP3Codec codec = new MP3Codec();
+		codec.decodeStream(cover);
+		
+		assertEquals(200, codec.getFrameCount());
+		assertArrayEquals(data, codec.id3);
+	}
+	
+	/**
+	 * <p>Generates an ID3v2 tag, its contents holding frame headers which are not 
+	 * to be taken as frames.
+	 * 
+	 * @param size		the size of the tag, excluding the header and footer
+	 * @param footer	boolean value specifying if the tag has a footer
+	 * @return			byte array containing the tag
+	 */
+	private static byte[] genID3Tag(int size, boolean footer){
+		byte[] tag = new byte[10 + size + (footer ? 10 : 0)];
+		tag[0] = 'I';
+		tag[1] = 'D';
+		tag[2] = '3';
+		tag[3] = 0x04;
+		tag[5] = footer ? (byte)0x10 : 0x00;
+		for(int i=0; i<4; i++){
+			tag[9-i] = (byte)((size >> (7 * i)) & 0x7F);
+		}
+		for(int i=10; i+4<=10+size; i+=Utils.MP3_FRAME_SIZE){
+			tag[i] = (byte)0xFF;
+			tag[i+1] = (byte)0xFB;
+			tag[i+2] = (byte)0x90;
+			tag[i+3] = (byte)0x40;
+		}
+		if(footer){
+			tag[10+size] = '3';
+			tag[10+size+1] = 'D';
+			tag[10+size+2] = 'I';
+		}
+		return tag;
+	}
+	
+	/**
+	 * <p>Joins two byte arrays.
+	 * 
+	 * @param first		the first byte array
+	 * @param second	the byte array to follow it
+	 * @return			the joined byte array
+	 */
+	private static byte[] join(byte[] first, byte[] second){
+		byte[] joined = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, joined, first.length, second.length);
+		return joined;
+	}
+}
@@ -0,0 +1,50 @@
+package stegongraphyToolTests;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import manipulation.MessageTooLargeException;
+import manipulation.sound.MP3.MP3Codec;
+import manipulation.sound.MP3.MP3StreamCodec;
+
+/**
+ * <p>Class for performing JUnit tests checking the streaming MP3 codec produces the 
+ * same stegotext as the MP3 codec, on MP3 files generated by {@link Utils#genMP3(int, boolean, long)}.
+ * 
+ * @author Ashley Allott
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TestMP3StreamCodec {
+	
+	private static final byte[] MESSAGE = "MP3 stream codec test message".getBytes();
+	
+	@Test
+	public void testA_embedMatchesGenStego() throws Exception {
+		for(boolean crc: new boolean[]{false, true}){
+			byte[] cover = Utils.genMP3(300, crc, 4);
+			
+			MP3Codec codec = new MP3Codec();
+			codec.decodeStream(cover);
+			codec.encode_msg(MESSAGE, "", 0);
+			byte[] stego = codec.genStego();
+			
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new MP3StreamCodec(new ByteArrayInputStream(cover), out).embed(MESSAGE);
+			assertArrayEquals(stego, out.toByteArray());
+			
+			assertArrayEquals(MESSAGE, new MP3StreamCodec(new ByteArrayInputStream(stego), null).extract());
+		}
+	}
+	
+	@Test(expected = MessageTooLargeException.class)
+	public void testB_embedMessageTooLarge() throws Exception {
+		byte[] cover = Utils.genMP3(20, false, 5);
+		new MP3StreamCodec(new ByteArrayInputStream(cover), new ByteArrayOutputStream()).embed(MESSAGE);
+	}
+}
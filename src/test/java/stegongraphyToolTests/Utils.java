@@ -13,12 +13,25 @@ import org.assertj.swing.fixture.DialogFixture;
 import org.assertj.swing.fixture.FrameFixture;
 import org.assertj.swing.fixture.JFileChooserFixture;
 
+import manipulation.sound.MP3.MP3Codec;
+
 /**
  * <p>Class provides a collection of common functions to be used by other test classes.
  * 
  * @author Ashley Allott
  */
 public class Utils {
+	
+	/**
+	 * <p>The size of the frames generated by {@link #genMP3(int, boolean, long)}, in bytes.
+	 */
+	public static final int MP3_FRAME_SIZE = 417;
+	
+	/**
+	 * <p>The size of the side info of a joint stereo frame, in bytes.
+	 */
+	public static final int MP3_SIDE_INFO_SIZE = 32;
+	
 	public Utils(){}
 
 	/**
@@ -39,6 +52,38 @@ public class Utils {
 		return b.toString();
 	}
 	
+	/**
+	 * <p>Generates a MP3 file of random data, split into MPEG 1 Layer III frames of 
+	 * 128kbps at 44.1kHz, in joint stereo.
+	 * 
+	 * <p>When the frames are protected, the CRC of each frame is calculated over the 
+	 * random side info.
+	 * 
+	 * @param frames	the amount of frames to generate
+	 * @param crc		boolean value specifying if the frames are protected by a CRC
+	 * @param seed		the seed for the random data
+	 * @return			byte array containing the generated MP3 file
+	 */
+	public static byte[] genMP3(int frames, boolean crc, long seed){
+		byte[] mp3 = new byte[frames * MP3_FRAME_SIZE];
+		new Random(seed).nextBytes(mp3);
+		
+		for(int i=0; i<frames; i++){
+			int offset = i * MP3_FRAME_SIZE;
+			mp3[offset] = (byte)0xFF;
+			mp3[offset+1] = crc ? (byte)0xFA : (byte)0xFB;
+			mp3[offset+2] = (byte)0x90;
+			mp3[offset+3] = (byte)0x40;
+			if(crc){
+				int value = MP3Codec.calCRC(mp3, offset + 2, 2, 0xFFFF);
+				value = MP3Codec.calCRC(mp3, offset + 6, MP3_SIDE_INFO_SIZE, value);
+				mp3[offset+4] = (byte)(value >> 8);
+				mp3[offset+5] = (byte)value;
+			}
+		}
+		return mp3;
+	}
+	
 	/**
 	 * <p>Extracts the integer character count value from the application.
 	 * 